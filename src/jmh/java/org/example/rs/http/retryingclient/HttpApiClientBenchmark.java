@@ -0,0 +1,135 @@
+package org.example.rs.http.retryingclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the overhead {@link HttpApiClient} adds to a call, against a stub server running in
+ * the same JVM.
+ *
+ * The {@code scenario} decides what the stub returns:
+ * <ul>
+ *     <li>{@code success}: 200 on every attempt</li>
+ *     <li>{@code retryThenSuccess}: 503, then 200, so every call made with retries takes 2 attempts</li>
+ *     <li>{@code exhaustedRetries}: 503 on every attempt</li>
+ * </ul>
+ * The retries don't wait, so that only the client's own cost is measured. Run with
+ * {@code ./gradlew jmh}, which reports allocations per operation using the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpApiClientBenchmark {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final byte[] BODY = "{\"id\": 1, \"name\": \"one\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"success", "retryThenSuccess", "exhaustedRetries"})
+    public String scenario;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private HttpApiClient client;
+    private GetRequest request;
+    private final AtomicLong requests = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Without it, the stub's replies wait for delayed ACKs and the benchmark measures those.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(MAX_ATTEMPTS, 0,
+                RetryConfigHelper.defaultRetryOnResponse(),
+                RetryConfigHelper.defaultRetryOnException()));
+        request = GetRequest.builder()
+                .target("http://localhost:" + server.getAddress().getPort() + "/my/resource")
+                .acceptedResponse("application/json")
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void getWithRetries(Blackhole blackhole) {
+        consume(client.getWithRetries(request, null), blackhole);
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        consume(client.get(request), blackhole);
+    }
+
+    @Benchmark
+    public void getWithRetries_buildingRequest(Blackhole blackhole) {
+        GetRequest newRequest = GetRequest.builder()
+                .target(request.getTarget())
+                .acceptedResponse("application/json")
+                .build();
+        consume(client.getWithRetries(newRequest, null), blackhole);
+    }
+
+    private static void consume(Response response, Blackhole blackhole) {
+        try {
+            blackhole.consume(response.getStatus());
+            blackhole.consume(response.readEntity(String.class));
+        } finally {
+            response.close();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status;
+        switch (scenario) {
+            case "success":
+                status = 200;
+                break;
+            case "retryThenSuccess":
+                // Benchmarks run single-threaded, so the attempts of a call alternate 503 and 200.
+                status = requests.getAndIncrement() % 2 == 0 ? 503 : 200;
+                break;
+            default:
+                status = 503;
+                break;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, BODY.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(BODY);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.rs.http.retryingclient;
+
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls made with requests bound from a {@link RequestTemplate} to calls made with requests
+ * whose target is concatenated, calling a different target each time, as calls to an endpoint with a
+ * variable path do.
+ *
+ * The client's connector answers in memory, without any I/O, so that only the cost of making the
+ * request in the client is measured, which a round trip over the loopback would hide. Run with
+ * {@code ./gradlew jmh -PjmhArgs=RequestTemplateBenchmark}, which reports allocations per operation
+ * using the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestTemplateBenchmark {
+    private static final String BASE_TARGET = "http://api.example.com";
+    /**
+     * The number of distinct targets called in turn, more than any per-target cache would keep.
+     */
+    private static final int DISTINCT_IDS = 100_000;
+    private static final byte[] BODY = "{\"id\": 1, \"name\": \"one\"}".getBytes(StandardCharsets.UTF_8);
+
+    private Client jerseyClient;
+    private HttpApiClient client;
+    private RequestTemplate template;
+    private int id;
+
+    @Setup
+    public void setUp() {
+        jerseyClient = ClientBuilder.newClient(new ClientConfig()
+                .connectorProvider((client, configuration) -> new InMemoryConnector()));
+        client = new HttpApiClient(jerseyClient, RetryConfigHelper.regularIntervalConfig(3, 0,
+                RetryConfigHelper.defaultRetryOnResponse(),
+                RetryConfigHelper.defaultRetryOnException()));
+        template = RequestTemplate.builder()
+                .uriTemplate(BASE_TARGET + "/my/users/{id}/orders")
+                .acceptedResponse("application/json")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        jerseyClient.close();
+    }
+
+    @Benchmark
+    public void getWithRetries_bindingTemplate(Blackhole blackhole) {
+        consume(client.getWithRetries(template.bind(nextId()), null), blackhole);
+    }
+
+    @Benchmark
+    public void getWithRetries_concatenatingTarget(Blackhole blackhole) {
+        GetRequest request = GetRequest.builder()
+                .target(BASE_TARGET + "/my/users/" + nextId() + "/orders")
+                .acceptedResponse("application/json")
+                .build();
+        consume(client.getWithRetries(request, null), blackhole);
+    }
+
+    private int nextId() {
+        id = (id + 1) % DISTINCT_IDS;
+        return id;
+    }
+
+    private static void consume(Response response, Blackhole blackhole) {
+        try {
+            blackhole.consume(response.getStatus());
+            blackhole.consume(response.readEntity(String.class));
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Answers every request with 200 and a small JSON body.
+     */
+    private static final class InMemoryConnector implements Connector {
+        @Override
+        public ClientResponse apply(ClientRequest request) {
+            ClientResponse response = new ClientResponse(Response.Status.OK, request);
+            response.header("Content-Type", "application/json");
+            response.setEntityStream(new ByteArrayInputStream(BODY));
+            return response;
+        }
+
+        @Override
+        public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+            callback.response(apply(request));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public String getName() {
+            return "in-memory";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.rs.http.retryingclient;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal HTTP/1.1 stub serving every GET request with a small JSON body, except for the
+ * configured fraction of requests it fails on purpose:
+ * <ul>
+ *     <li>server errors: a 500, 502, 503 or 504 response</li>
+ *     <li>latency spikes: the response is delayed by the spike latency instead of the base one</li>
+ *     <li>connection resets: the connection is closed with a TCP RST instead of a response</li>
+ * </ul>
+ * It runs on plain sockets, one thread per connection, so that it can reset connections and count
+ * the connections the client opens.
+ */
+class FaultInjectingServer implements AutoCloseable {
+    private static final byte[] BODY = "{\"id\": 1, \"name\": \"one\"}".getBytes(StandardCharsets.UTF_8);
+    private static final int[] ERROR_STATUSES = {500, 502, 503, 504};
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fault-injecting-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long latencyMillis;
+    private final double errorRate;
+    private final double spikeRate;
+    private final long spikeLatencyMillis;
+    private final double resetRate;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong spikes = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger peakOpenConnections = new AtomicInteger();
+    private volatile boolean closed;
+
+    FaultInjectingServer(long latencyMillis, double errorRate, double spikeRate, long spikeLatencyMillis,
+                         double resetRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.spikeRate = spikeRate;
+        this.spikeLatencyMillis = spikeLatencyMillis;
+        this.resetRate = resetRate;
+        this.serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+
+    long getSpikes() {
+        return spikes.get();
+    }
+
+    long getResets() {
+        return resets.get();
+    }
+
+    long getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    int getPeakOpenConnections() {
+        return peakOpenConnections.get();
+    }
+
+    /**
+     * Starts counting afresh, e.g. once the warm-up is over. The peak of open connections starts
+     * from the connections currently open.
+     */
+    void resetCounters() {
+        requests.set(0);
+        errors.set(0);
+        spikes.set(0);
+        resets.set(0);
+        acceptedConnections.set(0);
+        peakOpenConnections.set(openConnections.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                continue;
+            }
+            acceptedConnections.incrementAndGet();
+            int open = openConnections.incrementAndGet();
+            peakOpenConnections.accumulateAndGet(open, Math::max);
+            executor.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            while (readRequestHead(in)) {
+                requests.incrementAndGet();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (random.nextDouble() < resetRate) {
+                    resets.incrementAndGet();
+                    // A zero linger time makes close() send a RST rather than a FIN
+                    s.setSoLinger(true, 0);
+                    return;
+                }
+                long delayMillis = latencyMillis;
+                if (random.nextDouble() < spikeRate) {
+                    spikes.incrementAndGet();
+                    delayMillis = spikeLatencyMillis;
+                }
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                int status = 200;
+                if (random.nextDouble() < errorRate) {
+                    errors.incrementAndGet();
+                    status = ERROR_STATUSES[random.nextInt(ERROR_STATUSES.length)];
+                }
+                writeResponse(out, status);
+            }
+        } catch (SocketException e) {
+            // The client closed the connection
+        } catch (IOException e) {
+            // Nothing to do but drop the connection
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads the request line and headers of the next request, which are all a GET request has.
+     *
+     * @return false if the client closed the connection
+     */
+    private static boolean readRequestHead(InputStream in) throws IOException {
+        int matched = 0;
+        boolean any = false;
+        int b;
+        while ((b = in.read()) != -1) {
+            any = true;
+            // Looking for the empty line, i.e. CR LF CR LF, ending the headers
+            if (b == (matched % 2 == 0 ? '\r' : '\n')) {
+                matched++;
+                if (matched == 4) {
+                    return true;
+                }
+            } else {
+                matched = b == '\r' ? 1 : 0;
+            }
+        }
+        if (any) {
+            throw new IOException("truncated request");
+        }
+        return false;
+    }
+
+    private static void writeResponse(OutputStream out, int status) throws IOException {
+        String head = "HTTP/1.1 " + status + " " + (status == 200 ? "OK" : "Error") + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + BODY.length + "\r\n"
+                + "\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(BODY);
+        out.flush();
+    }
+}
@@ -0,0 +1,295 @@
+package org.example.rs.http.retryingclient;
+
+import io.github.resilience4j.retry.RetryConfig;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Runs concurrent callers through {@link HttpApiClient} against a {@link FaultInjectingServer} for a
+ * while, then reports throughput, call latencies, the distribution of attempts per call, and the
+ * threads and connections used.
+ *
+ * Options are given as {@code key=value} arguments, e.g.
+ * {@code ./gradlew loadTest -PloadTestArgs='callers=64 errorRate=0.1 concurrencyLimits=true'};
+ * see {@link #DEFAULTS} for the keys. The last line of the report sums the run up on a single line,
+ * so that the runs of several configurations can be compared side by side.
+ *
+ * Besides the faults the server injects, a fraction of calls target a host that doesn't resolve,
+ * so that they fail with an {@link java.net.UnknownHostException}.
+ *
+ * The {@code transport} option picks the {@link Client} the calls are made with: {@code default}
+ * ({@link ClientHelper#defaultClient()}), {@code pooled} ({@link ClientHelper#pooledClient}, with a
+ * connection per caller) or {@code http2} ({@link ClientHelper#http2Client}).
+ */
+public class LoadTest {
+    private static final String WARMUP = "warmup";
+    private static final String LOAD = "load";
+    private static final String UNKNOWN_HOST = "unknown-host.invalid";
+
+    private static final Map<String, String> DEFAULTS = new TreeMap<>();
+
+    static {
+        DEFAULTS.put("label", "default");
+        DEFAULTS.put("transport", "default");
+        DEFAULTS.put("callers", "32");
+        DEFAULTS.put("warmupSeconds", "5");
+        DEFAULTS.put("durationSeconds", "30");
+        DEFAULTS.put("maxAttempts", "3");
+        DEFAULTS.put("retryWaitMillis", "10");
+        DEFAULTS.put("retryIOExceptions", "false");
+        DEFAULTS.put("retryBudget", "false");
+        DEFAULTS.put("concurrencyLimits", "false");
+        DEFAULTS.put("hedgeDelayMillis", "0");
+        DEFAULTS.put("latencyMillis", "1");
+        DEFAULTS.put("errorRate", "0.05");
+        DEFAULTS.put("spikeRate", "0.01");
+        DEFAULTS.put("spikeLatencyMillis", "200");
+        DEFAULTS.put("resetRate", "0.01");
+        DEFAULTS.put("unknownHostRate", "0.01");
+    }
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new TreeMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+                System.err.println("Invalid option: " + arg + ", valid options and defaults: " + DEFAULTS);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        try (FaultInjectingServer server = new FaultInjectingServer(longOption("latencyMillis"),
+                doubleOption("errorRate"), doubleOption("spikeRate"), longOption("spikeLatencyMillis"),
+                doubleOption("resetRate"))) {
+            Client transport = newTransport();
+            try {
+                run(server, newClient(transport));
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    private void run(FaultInjectingServer server, HttpApiClient client) throws InterruptedException {
+        String target = "http://localhost:" + server.getPort() + "/load";
+        String unknownHostTarget = "http://" + UNKNOWN_HOST + ":" + server.getPort() + "/load";
+
+        System.out.println("Options: " + options);
+        runCallers(client, WARMUP, target, unknownHostTarget, longOption("warmupSeconds"),
+                new LatencyHistogram(), new ConcurrentHashMap<>());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long startedThreadsBefore = threads.getTotalStartedThreadCount();
+        server.resetCounters();
+        LatencyHistogram callLatencies = new LatencyHistogram();
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        long startNanos = System.nanoTime();
+        runCallers(client, LOAD, target, unknownHostTarget, longOption("durationSeconds"), callLatencies,
+                outcomes);
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long calls = callLatencies.getCount();
+        long requests = server.getRequests();
+        long connections = server.getAcceptedConnections();
+        System.out.printf(Locale.ROOT, "Calls: %d in %.1f s, %.1f calls/s%n", calls, elapsedSeconds,
+                calls / elapsedSeconds);
+        System.out.printf(Locale.ROOT, "Call latency: mean %s, p50 %s, p99 %s, p999 %s%n",
+                millis(callLatencies.getMean()), millis(callLatencies.getValueAtPercentile(0.5)),
+                millis(callLatencies.getValueAtPercentile(0.99)),
+                millis(callLatencies.getValueAtPercentile(0.999)));
+        System.out.println("Outcomes: " + counts(outcomes));
+        System.out.printf(Locale.ROOT, "Server: %d requests, %d errors, %d spikes, %d resets%n",
+                requests, server.getErrors(), server.getSpikes(), server.getResets());
+        for (CallMetricsSnapshot snapshot : client.getMetrics().snapshot()) {
+            if (LOAD.equals(snapshot.getRetryName())) {
+                System.out.println("Attempts per call to " + snapshot.getHost() + ": "
+                        + attemptsDistribution(snapshot.getAttemptsPerCall())
+                        + ", retries " + snapshot.getRetries()
+                        + ", exhausted " + snapshot.getExhaustedCalls()
+                        + ", attempt latency p99 " + millis(snapshot.getAttemptLatencyP99()));
+            }
+        }
+        System.out.printf("Threads: %d live, %d peak, %d started during the run%n", threads.getThreadCount(),
+                threads.getPeakThreadCount(), threads.getTotalStartedThreadCount() - startedThreadsBefore);
+        System.out.printf("Connections: %d opened during the run, %d peak open, %d open at the end%n",
+                connections, server.getPeakOpenConnections(), server.getOpenConnections());
+        System.out.printf(Locale.ROOT,
+                "SUMMARY label=%s transport=%s calls/s=%.1f p50=%s p99=%s p999=%s ok=%.4f requests/call=%.3f"
+                        + " peakThreads=%d connections=%d%n",
+                options.get("label"), options.get("transport"), calls / elapsedSeconds,
+                millis(callLatencies.getValueAtPercentile(0.5)), millis(callLatencies.getValueAtPercentile(0.99)),
+                millis(callLatencies.getValueAtPercentile(0.999)),
+                calls == 0 ? 0.0 : (double) count(outcomes, "200") / calls,
+                calls == 0 ? 0.0 : (double) requests / calls, threads.getPeakThreadCount(), connections);
+    }
+
+    private Client newTransport() {
+        switch (options.get("transport")) {
+            case "default":
+                return ClientHelper.defaultClient();
+            case "pooled":
+                // Enough connections that callers never wait for one, as with the other transports
+                return ClientHelper.pooledClient(PooledTransportConfig.builder()
+                        .maxConnectionsPerHost(intOption("callers"))
+                        .maxTotalConnections(2 * intOption("callers"))
+                        .build());
+            case "http2":
+                return ClientHelper.http2Client(Http2TransportConfig.builder().build());
+            default:
+                throw new IllegalArgumentException("Invalid transport: " + options.get("transport")
+                        + ", valid transports: default, pooled, http2");
+        }
+    }
+
+    private HttpApiClient newClient(Client transport) {
+        Predicate<Throwable> retryOnException = booleanOption("retryIOExceptions")
+                ? e -> e instanceof IOException || e.getCause() instanceof IOException
+                : RetryConfigHelper.defaultRetryOnException();
+        long retryWaitMillis = longOption("retryWaitMillis");
+        // RetryConfigHelper only takes whole seconds, too coarse for a run of a few seconds
+        RetryConfig retryConfig = RetryConfig.<Response>custom()
+                .maxAttempts(intOption("maxAttempts"))
+                .intervalBiFunction(RetryAfterIntervalFunction.of(numOfAttempts -> retryWaitMillis))
+                .retryOnResult(RetryConfigHelper.defaultRetryOnResponse())
+                .retryOnException(retryOnException)
+                .retryExceptions(IOException.class, TimeoutException.class)
+                .build();
+        HttpApiClient result = new HttpApiClient(transport, retryConfig);
+        for (String retryName : new String[]{WARMUP, LOAD}) {
+            result.addRetryConfig(retryName, retryConfig);
+            if (booleanOption("retryBudget")) {
+                result.addRetryBudget(retryName, RetryBudgetConfig.builder().build());
+            }
+            if (longOption("hedgeDelayMillis") > 0) {
+                result.addHedgingConfig(retryName, HedgingConfig.builder()
+                        .delay(Duration.ofMillis(longOption("hedgeDelayMillis")))
+                        .build());
+            }
+        }
+        if (booleanOption("concurrencyLimits")) {
+            result.enableConcurrencyLimits(ConcurrencyLimitConfig.builder().build());
+        }
+        return result;
+    }
+
+    private void runCallers(HttpApiClient client, String retryName, String target, String unknownHostTarget,
+                            long seconds, LatencyHistogram callLatencies, Map<String, LongAdder> outcomes)
+            throws InterruptedException {
+        GetRequest request = GetRequest.builder().target(target).acceptedResponse("application/json").build();
+        GetRequest unknownHostRequest = request.toBuilder().target(unknownHostTarget).build();
+        double unknownHostRate = doubleOption("unknownHostRate");
+        long endNanos = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        int callers = intOption("callers");
+        CountDownLatch done = new CountDownLatch(callers);
+        for (int i = 0; i < callers; i++) {
+            Thread caller = new Thread(() -> {
+                try {
+                    while (System.nanoTime() - endNanos < 0) {
+                        boolean unknownHost = ThreadLocalRandom.current().nextDouble() < unknownHostRate;
+                        long startNanos = System.nanoTime();
+                        String outcome = call(client, unknownHost ? unknownHostRequest : request, retryName);
+                        callLatencies.record(System.nanoTime() - startNanos);
+                        outcomes.computeIfAbsent(outcome, o -> new LongAdder()).increment();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-test-caller-" + i);
+            caller.start();
+        }
+        done.await();
+    }
+
+    /**
+     * Makes a call and returns its outcome: the status code of the response, or the simple name of
+     * the root cause of the exception.
+     */
+    private static String call(HttpApiClient client, GetRequest request, String retryName) {
+        try {
+            Response response = client.getWithRetries(request, retryName);
+            try {
+                response.readEntity(String.class);
+                return String.valueOf(response.getStatus());
+            } finally {
+                response.close();
+            }
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            return cause.getClass().getSimpleName();
+        }
+    }
+
+    private static String attemptsDistribution(long[] attemptsPerCall) {
+        StringBuilder result = new StringBuilder();
+        for (int attempts = 1; attempts < attemptsPerCall.length; attempts++) {
+            if (attemptsPerCall[attempts] > 0) {
+                result.append(result.length() == 0 ? "" : ", ")
+                        .append(attempts)
+                        .append(attempts == attemptsPerCall.length - 1 ? "+" : "")
+                        .append(": ")
+                        .append(attemptsPerCall[attempts]);
+            }
+        }
+        return "{" + result + "}";
+    }
+
+    private static Map<String, Long> counts(Map<String, LongAdder> adders) {
+        Map<String, Long> result = new TreeMap<>();
+        adders.forEach((key, adder) -> result.put(key, adder.sum()));
+        return result;
+    }
+
+    private static long count(Map<String, LongAdder> adders, String key) {
+        LongAdder adder = adders.get(key);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private static String millis(Duration duration) {
+        return String.format(Locale.ROOT, "%.1fms", duration.toNanos() / 1e6);
+    }
+
+    private int intOption(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private long longOption(String key) {
+        return Long.parseLong(options.get(key));
+    }
+
+    private double doubleOption(String key) {
+        return Double.parseDouble(options.get(key));
+    }
+
+    private boolean booleanOption(String key) {
+        return Boolean.parseBoolean(options.get(key));
+    }
+}
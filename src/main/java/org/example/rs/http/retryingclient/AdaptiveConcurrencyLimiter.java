@@ -0,0 +1,188 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of attempts in flight to a host, adapting the limit to how the host copes
+ * using additive increase, multiplicative decrease (AIMD).
+ *
+ * An attempt that succeeds while the host is busy, i.e. while at least half of the limit is in use,
+ * raises the limit by one. An attempt showing signs of overload lowers it by the configured ratio.
+ * Attempts over the limit wait up to the configured time for a slot, then get rejected with a
+ * {@link ConcurrencyLimitExceededException}.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotAvailable = lock.newCondition();
+    private final LongAdder rejected = new LongAdder();
+
+    @Getter
+    private final String host;
+    @Getter
+    private final ConcurrencyLimitConfig config;
+    private final long maxLatencyNanos;
+    private volatile int limit;
+    private volatile int inFlight;
+
+    AdaptiveConcurrencyLimiter(@NonNull String host, @NonNull ConcurrencyLimitConfig config) {
+        Preconditions.checkArgument(config.getMinLimit() >= 1, "invalid value: %s", config.getMinLimit());
+        Preconditions.checkArgument(config.getMaxLimit() >= config.getMinLimit(),
+                "invalid value: %s", config.getMaxLimit());
+        Preconditions.checkArgument(config.getBackoffRatio() > 0.0 && config.getBackoffRatio() < 1.0,
+                "invalid value: %s", config.getBackoffRatio());
+        this.host = host;
+        this.config = config;
+        this.maxLatencyNanos = config.getMaxLatency().toNanos();
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getInitialLimit(), config.getMaxLimit()));
+    }
+
+    /**
+     * Returns the current limit of attempts in flight.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the number of attempts in flight.
+     *
+     * @return the number of attempts
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of attempts rejected because the limit was reached.
+     *
+     * @return the number of rejected attempts
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    Supplier<Response> decorate(@NonNull Supplier<Response> attemptSupp) {
+        return () -> {
+            acquire(config.getMaxQueueTime().toNanos());
+            long startNanos = System.nanoTime();
+            Response result;
+            try {
+                result = attemptSupp.get();
+            } catch (RuntimeException e) {
+                release(isOverloaded(e), false);
+                throw e;
+            }
+            release(isOverloaded(result), System.nanoTime() - startNanos > maxLatencyNanos);
+            return result;
+        };
+    }
+
+    Supplier<CompletionStage<Response>> decorateAsync(@NonNull Supplier<CompletionStage<Response>> attemptSupp) {
+        return () -> {
+            try {
+                acquire(0);
+            } catch (ConcurrencyLimitExceededException e) {
+                CompletableFuture<Response> rejection = new CompletableFuture<>();
+                rejection.completeExceptionally(e);
+                return rejection;
+            }
+            long startNanos = System.nanoTime();
+            CompletionStage<Response> stage;
+            try {
+                stage = attemptSupp.get();
+            } catch (RuntimeException e) {
+                release(isOverloaded(e), false);
+                throw e;
+            }
+            return stage.whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    release(isOverloaded(throwable), false);
+                } else {
+                    release(isOverloaded(result), System.nanoTime() - startNanos > maxLatencyNanos);
+                }
+            });
+        };
+    }
+
+    private void acquire(long maxWaitNanos) {
+        lock.lock();
+        try {
+            long remainingNanos = maxWaitNanos;
+            while (inFlight >= limit) {
+                if (remainingNanos <= 0) {
+                    rejected.increment();
+                    throw new ConcurrencyLimitExceededException(host, limit);
+                }
+                try {
+                    remainingNanos = slotAvailable.awaitNanos(remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected.increment();
+                    throw new ConcurrencyLimitExceededException(host, limit);
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(boolean overloaded, boolean slow) {
+        lock.lock();
+        try {
+            int previousLimit = limit;
+            if (overloaded || slow) {
+                limit = Math.max(config.getMinLimit(), (int) (previousLimit * config.getBackoffRatio()));
+                if (limit != previousLimit) {
+                    log.debug("Lowered concurrency limit of host {} to {}", host, limit);
+                }
+            } else if (inFlight * 2 >= previousLimit) {
+                limit = Math.min(config.getMaxLimit(), previousLimit + 1);
+            }
+            inFlight--;
+            if (limit > previousLimit) {
+                slotAvailable.signalAll();
+            } else {
+                slotAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isOverloaded(Response response) {
+        int status = response.getStatus();
+        return status == Response.Status.TOO_MANY_REQUESTS.getStatusCode()
+                || status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()
+                || status == Response.Status.GATEWAY_TIMEOUT.getStatusCode();
+    }
+
+    private static boolean isOverloaded(Throwable throwable) {
+        Throwable cause = throwable;
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            cause = throwable.getCause();
+        }
+        // Jersey wraps the timeouts of the underlying connection in a ProcessingException
+        return cause instanceof TimeoutException || cause instanceof SocketTimeoutException
+                || cause.getCause() instanceof SocketTimeoutException;
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.rs.http.retryingclient;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event spanning one attempt of a request made with retries.
+ *
+ * The event is begun before every attempt, but its fields are only filled in and it's only committed
+ * if a recording has it enabled, so it costs next to nothing otherwise.
+ */
+@Name("org.example.rs.http.retryingclient.Attempt")
+@Label("HTTP Attempt")
+@Category({"HTTP API Client"})
+@Description("An attempt of a request made with retries")
+@StackTrace(false)
+class AttemptEvent extends Event {
+    @Label("Retry Name")
+    String retryName;
+
+    @Label("Host")
+    String host;
+
+    @Label("Attempt")
+    @Description("The number of the attempt, starting from 1")
+    int attempt;
+
+    @Label("Status Code")
+    @Description("The status code of the response, or 0 if the attempt threw an exception")
+    int statusCode;
+
+    @Label("Exception")
+    @Description("The class of the exception the attempt threw, if any")
+    String exception;
+
+    /**
+     * Commits the event with the outcome of the attempt, if a recording has it enabled.
+     */
+    void finish(CallMetrics metrics, int attempt, int statusCode, Throwable throwable) {
+        end();
+        if (shouldCommit()) {
+            this.retryName = metrics.getRetryName();
+            this.host = metrics.getHost();
+            this.attempt = attempt;
+            this.statusCode = statusCode;
+            this.exception = throwable == null ? null : throwable.getClass().getName();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.rs.http.retryingclient;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event spanning the wait between two attempts of a request made with
+ * retries. Like {@link AttemptEvent}, it's only filled in and committed if a recording has it enabled.
+ */
+@Name("org.example.rs.http.retryingclient.BackoffWait")
+@Label("HTTP Backoff Wait")
+@Category({"HTTP API Client"})
+@Description("The wait before retrying a request")
+@StackTrace(false)
+class BackoffWaitEvent extends Event {
+    @Label("Retry Name")
+    String retryName;
+
+    @Label("Host")
+    String host;
+
+    @Label("Attempt")
+    @Description("The number of the attempt the wait came after, starting from 1")
+    int attempt;
+
+    /**
+     * Commits the event once the wait is over, if a recording has it enabled.
+     */
+    void finish(CallMetrics metrics, int attempt) {
+        end();
+        if (shouldCommit()) {
+            this.retryName = metrics.getRetryName();
+            this.host = metrics.getHost();
+            this.attempt = attempt;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Configuration of a batch of requests made using
+ * {@link HttpApiClient#getAllWithRetries(java.util.Collection, String, BatchConfig)}.
+ */
+@Builder
+@ToString
+public class BatchConfig {
+
+    /**
+     * The maximum number of attempts in flight at any time, across all hosts.
+     */
+    @Builder.Default
+    @Getter
+    private int maxConcurrency = 64;
+
+    /**
+     * The maximum number of attempts in flight to a single host at any time.
+     */
+    @Builder.Default
+    @Getter
+    private int maxConcurrencyPerHost = 8;
+
+    /**
+     * How long the whole batch may take. Requests that haven't completed by then are cancelled and
+     * reported as failed with a {@link java.util.concurrent.TimeoutException}. If null, the batch
+     * has no deadline.
+     */
+    @Getter
+    private Duration deadline;
+}
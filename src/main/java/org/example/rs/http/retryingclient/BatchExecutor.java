@@ -0,0 +1,161 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs a batch of requests concurrently, within the limits of a {@link BatchConfig}.
+ *
+ * Each request runs on its own thread if the JDK has virtual ones. Else the requests run on a pool
+ * of {@link BatchConfig#getMaxConcurrency()} platform threads, so that a large batch doesn't start
+ * a thread per request. The concurrency limits are enforced per attempt rather than per request, so a
+ * request waiting to be retried doesn't hold a slot that another request's attempt could use.
+ */
+@Slf4j
+class BatchExecutor {
+    private static final ThreadFactoryBuilder PLATFORM_THREADS = new ThreadFactoryBuilder()
+            .setNameFormat("http-api-client-batch-%d")
+            .setDaemon(true);
+
+    private final BatchConfig config;
+    private final Semaphore globalSlots;
+    private final Map<String, Semaphore> hostSlots = new ConcurrentHashMap<>();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    BatchExecutor(@NonNull BatchConfig config) {
+        Preconditions.checkArgument(config.getMaxConcurrency() > 0, "non-positive value: %s",
+                config.getMaxConcurrency());
+        Preconditions.checkArgument(config.getMaxConcurrencyPerHost() > 0, "non-positive value: %s",
+                config.getMaxConcurrencyPerHost());
+        this.config = config;
+        this.globalSlots = new Semaphore(config.getMaxConcurrency());
+    }
+
+    /**
+     * Runs the specified requests.
+     *
+     * @param requests the requests
+     * @param invocation invokes a request with retries, making each attempt through the specified decorator
+     * @param mapper maps the response of a request to the value of its result, closing it if needed
+     * @param <T> the type of the values
+     * @return the results, in the order of the requests
+     */
+    <T> List<BatchResult<T>> execute(@NonNull Collection<GetRequest> requests,
+                                     @NonNull BiFunction<GetRequest, UnaryOperator<Supplier<Response>>, Response> invocation,
+                                     @NonNull Function<Response, T> mapper) {
+        long deadlineNanos = config.getDeadline() == null ? Long.MAX_VALUE
+                : System.nanoTime() + config.getDeadline().toNanos();
+        ExecutorService executor = newExecutor(Math.min(config.getMaxConcurrency(), Math.max(1, requests.size())));
+        try {
+            List<Future<T>> futures = new ArrayList<>(requests.size());
+            for (GetRequest request : requests) {
+                futures.add(executor.submit(() -> {
+                    Response response = invocation.apply(request, attempt -> gated(request, attempt));
+                    if (cancelled.get()) {
+                        ResponseHelper.drainAndClose(response);
+                        throw new CancellationException("Batch cancelled");
+                    }
+                    return mapper.apply(response);
+                }));
+            }
+
+            List<BatchResult<T>> results = new ArrayList<>(futures.size());
+            int i = 0;
+            for (GetRequest request : requests) {
+                results.add(await(request, futures.get(i++), deadlineNanos));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> BatchResult<T> await(GetRequest request, Future<T> future, long deadlineNanos) {
+        try {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            T value = deadlineNanos == Long.MAX_VALUE ? future.get() : future.get(remainingNanos, TimeUnit.NANOSECONDS);
+            return BatchResult.success(request, value);
+        } catch (ExecutionException e) {
+            return BatchResult.failure(request, e.getCause());
+        } catch (TimeoutException e) {
+            if (cancelled.compareAndSet(false, true)) {
+                log.warn("Batch deadline of {} exceeded, cancelling the remaining requests", config.getDeadline());
+            }
+            future.cancel(true);
+            return BatchResult.failure(request, new TimeoutException("Batch deadline exceeded"));
+        } catch (CancellationException e) {
+            return BatchResult.failure(request, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled.set(true);
+            future.cancel(true);
+            return BatchResult.failure(request, e);
+        }
+    }
+
+    /**
+     * Makes an attempt once a global and a per-host slot are available, releasing them as soon as
+     * the attempt completes.
+     */
+    private Supplier<Response> gated(GetRequest request, Supplier<Response> attempt) {
+        Semaphore perHost = hostSlots.computeIfAbsent(String.valueOf(TargetHosts.hostOf(request.getTarget())),
+                host -> new Semaphore(config.getMaxConcurrencyPerHost()));
+        return () -> {
+            acquire(globalSlots);
+            try {
+                acquire(perHost);
+                try {
+                    return attempt.get();
+                } finally {
+                    perHost.release();
+                }
+            } finally {
+                globalSlots.release();
+            }
+        };
+    }
+
+    private static void acquire(Semaphore slots) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a slot");
+        }
+    }
+
+    /**
+     * Returns an executor running each task on a virtual thread if the JDK has them, else on a pool of
+     * the specified number of platform threads.
+     */
+    private static ExecutorService newExecutor(int maxPlatformThreads) {
+        try {
+            // Available from Java 21 on
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(maxPlatformThreads, PLATFORM_THREADS.build());
+        }
+    }
+}
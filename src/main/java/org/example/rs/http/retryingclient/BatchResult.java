@@ -0,0 +1,41 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * The outcome of one of the requests of a batch: either the value it produced or the exception it
+ * failed with.
+ *
+ * @param <T> the type of the value
+ */
+@ToString
+public class BatchResult<T> {
+    @Getter
+    private final GetRequest request;
+
+    @Getter
+    private final T value;
+
+    @Getter
+    private final Throwable error;
+
+    private BatchResult(GetRequest request, T value, Throwable error) {
+        this.request = request;
+        this.value = value;
+        this.error = error;
+    }
+
+    static <T> BatchResult<T> success(@NonNull GetRequest request, T value) {
+        return new BatchResult<>(request, value, null);
+    }
+
+    static <T> BatchResult<T> failure(@NonNull GetRequest request, @NonNull Throwable error) {
+        return new BatchResult<>(request, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
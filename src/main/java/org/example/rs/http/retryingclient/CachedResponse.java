@@ -0,0 +1,98 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Getter;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A response stored in a {@link ResponseCache}, along with what is needed to tell whether it is
+ * fresh and to revalidate it.
+ */
+public final class CachedResponse {
+    private final ResponseSnapshot snapshot;
+
+    @Getter
+    private final Instant storedAt;
+
+    @Getter
+    private final Duration maxAge;
+
+    @Getter
+    private final String entityTag;
+
+    @Getter
+    private final String lastModified;
+
+    @Getter
+    private final int weight;
+
+    private CachedResponse(ResponseSnapshot snapshot, Instant storedAt, Duration maxAge) {
+        this.snapshot = snapshot;
+        this.storedAt = storedAt;
+        this.maxAge = maxAge;
+        this.entityTag = snapshot.getHeaders().getFirst(HttpHeaders.ETAG);
+        this.lastModified = snapshot.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+        this.weight = snapshot.getWeight();
+    }
+
+    /**
+     * Returns a cache entry for the specified 200/OK response, buffering its entity, or null if the
+     * response may not be cached, is meant for a single caller, or couldn't be revalidated once stale.
+     */
+    static CachedResponse of(Response response, Instant now) {
+        if (!response.getStatusInfo().equals(Response.Status.OK)) {
+            return null;
+        }
+        String vary = response.getHeaderString(HttpHeaders.VARY);
+        if (vary != null && vary.trim().equals("*")) {
+            return null;
+        }
+        Duration maxAge = Duration.ZERO;
+        String cacheControlHeader = response.getHeaderString(HttpHeaders.CACHE_CONTROL);
+        if (cacheControlHeader != null) {
+            CacheControl cacheControl = CacheControl.valueOf(cacheControlHeader);
+            if (cacheControl.isNoStore() || cacheControl.isPrivate()) {
+                return null;
+            }
+            if (!cacheControl.isNoCache() && cacheControl.getMaxAge() > 0) {
+                maxAge = Duration.ofSeconds(cacheControl.getMaxAge());
+            }
+        }
+        boolean revalidatable = response.getHeaderString(HttpHeaders.ETAG) != null
+                || response.getHeaderString(HttpHeaders.LAST_MODIFIED) != null;
+        if (maxAge.isZero() && !revalidatable) {
+            return null;
+        }
+        return new CachedResponse(ResponseSnapshot.of(response), now, maxAge);
+    }
+
+    /**
+     * Returns a copy of this entry, refreshed using a 304/Not Modified response to its revalidation.
+     */
+    CachedResponse revalidated(Response notModified, Instant now) {
+        Duration newMaxAge = maxAge;
+        String cacheControlHeader = notModified.getHeaderString(HttpHeaders.CACHE_CONTROL);
+        if (cacheControlHeader != null) {
+            CacheControl cacheControl = CacheControl.valueOf(cacheControlHeader);
+            newMaxAge = cacheControl.isNoCache() || cacheControl.getMaxAge() < 0
+                    ? Duration.ZERO : Duration.ofSeconds(cacheControl.getMaxAge());
+        }
+        return new CachedResponse(snapshot, now, newMaxAge);
+    }
+
+    boolean isFresh(Instant now) {
+        return now.isBefore(storedAt.plus(maxAge));
+    }
+
+    boolean isUsableWhenStale(Duration maxStale, Instant now) {
+        return now.isBefore(storedAt.plus(maxAge).plus(maxStale));
+    }
+
+    ResponseSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
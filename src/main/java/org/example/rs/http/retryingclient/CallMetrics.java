@@ -0,0 +1,99 @@
+package org.example.rs.http.retryingclient;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the calls made using one retry configuration to one host. Recording doesn't allocate.
+ */
+class CallMetrics {
+    private static final int MAX_STATUS_CODE = 599;
+    private static final int MAX_TRACKED_ATTEMPTS = 10;
+
+    private final String retryName;
+    private final String host;
+    private final LatencyHistogram attemptLatencies = new LatencyHistogram();
+    private final LatencyHistogram callLatencies = new LatencyHistogram();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhaustedCalls = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(MAX_STATUS_CODE + 1);
+    private final AtomicLongArray attemptsPerCall = new AtomicLongArray(MAX_TRACKED_ATTEMPTS + 1);
+
+    CallMetrics(String retryName, String host) {
+        this.retryName = retryName;
+        this.host = host;
+    }
+
+    String getRetryName() {
+        return retryName;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    void onAttempt(long durationNanos, int statusCode) {
+        attemptLatencies.record(durationNanos);
+        statusCodes.incrementAndGet(statusCode >= 0 && statusCode <= MAX_STATUS_CODE ? statusCode : 0);
+    }
+
+    void onAttemptFailed(long durationNanos) {
+        attemptLatencies.record(durationNanos);
+        exceptions.increment();
+    }
+
+    /**
+     * Records the completion of a call.
+     *
+     * @param durationNanos the duration of the call, including all of its attempts and waits
+     * @param attempts the number of attempts made
+     * @param exhausted whether the call ended with an outcome that would have been retried, had
+     *                  there been attempts or budget left
+     */
+    void onCall(long durationNanos, int attempts, boolean exhausted) {
+        callLatencies.record(durationNanos);
+        attemptsPerCall.incrementAndGet(Math.min(attempts, MAX_TRACKED_ATTEMPTS));
+        if (attempts > 1) {
+            retries.add(attempts - 1);
+        }
+        if (exhausted) {
+            exhaustedCalls.increment();
+        }
+    }
+
+    CallMetricsSnapshot snapshot() {
+        Map<Integer, Long> statusCounts = new TreeMap<>();
+        for (int i = 0; i <= MAX_STATUS_CODE; i++) {
+            long count = statusCodes.get(i);
+            if (count > 0) {
+                statusCounts.put(i, count);
+            }
+        }
+        long[] attempts = new long[MAX_TRACKED_ATTEMPTS + 1];
+        for (int i = 0; i <= MAX_TRACKED_ATTEMPTS; i++) {
+            attempts[i] = attemptsPerCall.get(i);
+        }
+        return CallMetricsSnapshot.builder()
+                .retryName(retryName)
+                .host(host)
+                .calls(callLatencies.getCount())
+                .attempts(attemptLatencies.getCount())
+                .retries(retries.sum())
+                .exhaustedCalls(exhaustedCalls.sum())
+                .exceptions(exceptions.sum())
+                .statusCodeCounts(statusCounts)
+                .attemptsPerCall(attempts)
+                .callLatencyMean(callLatencies.getMean())
+                .callLatencyP50(callLatencies.getValueAtPercentile(0.5))
+                .callLatencyP99(callLatencies.getValueAtPercentile(0.99))
+                .callLatencyP999(callLatencies.getValueAtPercentile(0.999))
+                .attemptLatencyMean(attemptLatencies.getMean())
+                .attemptLatencyP50(attemptLatencies.getValueAtPercentile(0.5))
+                .attemptLatencyP99(attemptLatencies.getValueAtPercentile(0.99))
+                .attemptLatencyP999(attemptLatencies.getValueAtPercentile(0.999))
+                .build();
+    }
+}
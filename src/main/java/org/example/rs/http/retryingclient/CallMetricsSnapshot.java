@@ -0,0 +1,66 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The metrics of the calls made using one retry configuration to one host, as of when the
+ * snapshot was taken.
+ */
+@Builder
+@Getter
+@ToString
+public class CallMetricsSnapshot {
+    private final String retryName;
+    private final String host;
+
+    /**
+     * The number of completed calls.
+     */
+    private final long calls;
+
+    /**
+     * The number of attempts made, including the first one of each call.
+     */
+    private final long attempts;
+
+    /**
+     * The number of attempts that were retries.
+     */
+    private final long retries;
+
+    /**
+     * The number of calls that ended with an exception or response that would have been retried,
+     * had there been attempts or retry budget left.
+     */
+    private final long exhaustedCalls;
+
+    /**
+     * The number of attempts that threw an exception.
+     */
+    private final long exceptions;
+
+    /**
+     * The number of attempts per response status code. Codes outside 0-599 are counted as 0.
+     */
+    private final Map<Integer, Long> statusCodeCounts;
+
+    /**
+     * The number of calls by the number of attempts they took; the last element counts the calls
+     * that took that many attempts or more.
+     */
+    private final long[] attemptsPerCall;
+
+    private final Duration callLatencyMean;
+    private final Duration callLatencyP50;
+    private final Duration callLatencyP99;
+    private final Duration callLatencyP999;
+    private final Duration attemptLatencyMean;
+    private final Duration attemptLatencyP50;
+    private final Duration attemptLatencyP99;
+    private final Duration attemptLatencyP999;
+}
@@ -0,0 +1,59 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helps create the {@link CircuitBreakerConfig} used by the per-host circuit breakers of
+ * {@link HttpApiClient}.
+ */
+public class CircuitBreakerConfigHelper {
+
+    /**
+     * Creates a {@link CircuitBreakerConfig} that opens a host's circuit breaker when too many of the
+     * recent calls to it failed, either with an I/O error or with a 5XX response.
+     *
+     * @param failureRateThreshold the failure rate, in percent, above which the breaker opens
+     * @param slidingWindowSize the number of most recent calls the failure rate is calculated over
+     * @param waitDurationInOpenState how long the breaker stays open before it lets probes through
+     * @param permittedCallsInHalfOpenState the number of probes let through while half-open
+     * @return a new {@link CircuitBreakerConfig} instance
+     */
+    public static CircuitBreakerConfig hostCircuitBreakerConfig(float failureRateThreshold,
+                                                                int slidingWindowSize,
+                                                                Duration waitDurationInOpenState,
+                                                                int permittedCallsInHalfOpenState) {
+        Preconditions.checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 100,
+                "invalid failure rate threshold: %s", failureRateThreshold);
+        Preconditions.checkArgument(slidingWindowSize > 0, "non-positive value: %s", slidingWindowSize);
+        Preconditions.checkArgument(permittedCallsInHalfOpenState > 0, "non-positive value: %s",
+                permittedCallsInHalfOpenState);
+
+        return CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(slidingWindowSize)
+                .waitDurationInOpenState(waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .recordExceptions(ProcessingException.class, IOException.class, TimeoutException.class)
+                .recordResult(result -> result instanceof Response
+                        && ((Response) result).getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR)
+                .build();
+    }
+
+    /**
+     * Creates a {@link CircuitBreakerConfig} with default settings: the breaker opens if half of
+     * the last 20 calls failed and lets up to 3 probes through after 30 seconds.
+     *
+     * @return a new {@link CircuitBreakerConfig} instance
+     */
+    public static CircuitBreakerConfig defaultHostCircuitBreakerConfig() {
+        return hostCircuitBreakerConfig(50, 20, Duration.ofSeconds(30), 3);
+    }
+}
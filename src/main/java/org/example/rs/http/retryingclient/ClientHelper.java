@@ -0,0 +1,150 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientLifecycleListener;
+import org.glassfish.jersey.client.ClientProperties;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the {@link Client} instances that {@link HttpApiClient} delegates to.
+ */
+@Slf4j
+public class ClientHelper {
+    static final int DEFAULT_CONNECT_TIMEOUT = 30 * 60 * 1000; // 30 minutes
+    static final int DEFAULT_READ_TIMEOUT = 90 * 60 * 1000; // 90 minutes
+
+    /**
+     * The client property holding the {@link DnsCache} of a pooled client, if it has one.
+     */
+    static final String DNS_CACHE = ClientHelper.class.getName() + ".dnsCache";
+
+    private static final ScheduledExecutorService EVICTION_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("http-api-client-evictor-%d").setDaemon(true).build());
+
+    /**
+     * Creates a {@link Client} using the default connector, which doesn't pool connections.
+     *
+     * @return a new {@link Client} instance
+     */
+    public static Client defaultClient() {
+        return ClientBuilder.newBuilder()
+                .property(ClientProperties.CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT)
+                .property(ClientProperties.READ_TIMEOUT, DEFAULT_READ_TIMEOUT)
+                .build();
+    }
+
+    /**
+     * Creates a {@link Client} that uses a pool of persistent connections with per-host and total
+     * limits. Expired and idle connections are evicted periodically until the client is closed.
+     * Host names are resolved through a {@link DnsCache} if the config has one.
+     *
+     * @param config the pool settings
+     * @return a new {@link Client} instance
+     */
+    public static Client pooledClient(@NonNull PooledTransportConfig config) {
+        Preconditions.checkArgument(config.getMaxTotalConnections() > 0, "non-positive value: %s",
+                config.getMaxTotalConnections());
+        Preconditions.checkArgument(config.getMaxConnectionsPerHost() > 0, "non-positive value: %s",
+                config.getMaxConnectionsPerHost());
+        Preconditions.checkArgument(!config.getEvictionInterval().isNegative()
+                && !config.getEvictionInterval().isZero(), "non-positive value: %s", config.getEvictionInterval());
+
+        DnsCache dnsCache = config.getDnsCache() == null ? null : new DnsCache(config.getDnsCache());
+        PoolingHttpClientConnectionManager connectionManager = dnsCache == null
+                ? new PoolingHttpClientConnectionManager()
+                : new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build(), dnsCache);
+        connectionManager.setMaxTotal(config.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerHost());
+
+        ClientConfig clientConfig = new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                .property(ApacheClientProperties.KEEPALIVE_STRATEGY, keepAliveStrategy(config))
+                .property(ApacheClientProperties.REQUEST_CONFIG, RequestConfig.custom()
+                        .setConnectionRequestTimeout((int) config.getConnectionRequestTimeout().toMillis())
+                        .build())
+                .property(ClientProperties.CONNECT_TIMEOUT, (int) config.getConnectTimeout().toMillis())
+                .property(ClientProperties.READ_TIMEOUT, (int) config.getReadTimeout().toMillis());
+        if (dnsCache != null) {
+            clientConfig.property(DNS_CACHE, dnsCache);
+        }
+
+        long evictionIntervalMillis = config.getEvictionInterval().toMillis();
+        long maxIdleMillis = config.getMaxIdleTime().toMillis();
+        ScheduledFuture<?> eviction = EVICTION_SCHEDULER.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+        }, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+        clientConfig.register(new ClientLifecycleListener() {
+            @Override
+            public void onInit() {
+            }
+
+            @Override
+            public void onClose() {
+                log.debug("Client closed, cancelling eviction of idle connections");
+                eviction.cancel(false);
+            }
+        });
+
+        log.debug("Creating pooled client with config {}", config);
+        return ClientBuilder.newClient(clientConfig);
+    }
+
+    /**
+     * Creates a {@link Client} that sends requests using the JDK's {@link java.net.http.HttpClient}.
+     * Concurrent requests to a host that speaks HTTP/2 share one multiplexed connection, and
+     * asynchronous requests don't hold a thread while waiting for their response. Retries, status
+     * handling and compression work the same as with the other clients.
+     *
+     * @param config the transport settings
+     * @return a new {@link Client} instance
+     */
+    public static Client http2Client(@NonNull Http2TransportConfig config) {
+        Preconditions.checkArgument(!config.getConnectTimeout().isNegative()
+                && !config.getConnectTimeout().isZero(), "non-positive value: %s", config.getConnectTimeout());
+
+        ClientConfig clientConfig = new ClientConfig()
+                .connectorProvider(new JdkHttpConnectorProvider(config))
+                .property(ClientProperties.CONNECT_TIMEOUT, (int) config.getConnectTimeout().toMillis())
+                .property(ClientProperties.READ_TIMEOUT, (int) config.getReadTimeout().toMillis());
+
+        log.debug("Creating HTTP/2 client with config {}", config);
+        return ClientBuilder.newClient(clientConfig);
+    }
+
+    /**
+     * Honours the {@code Keep-Alive} timeout sent by the server, but never keeps a connection alive
+     * for longer than the configured duration.
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(PooledTransportConfig config) {
+        long keepAliveMillis = config.getKeepAlive().toMillis();
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+    }
+}
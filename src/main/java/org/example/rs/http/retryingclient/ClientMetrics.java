@@ -0,0 +1,45 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metrics of the calls made by an {@link HttpApiClient}, per retry configuration and host.
+ */
+public class ClientMetrics {
+    private static final String NO_HOST = "";
+
+    private final Map<String, Map<String, CallMetrics>> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a snapshot of the metrics of every retry configuration and host used so far.
+     *
+     * @return the snapshots
+     */
+    public List<CallMetricsSnapshot> snapshot() {
+        List<CallMetricsSnapshot> result = new ArrayList<>();
+        metrics.values().forEach(byHost -> byHost.values().forEach(m -> result.add(m.snapshot())));
+        return result;
+    }
+
+    /**
+     * Returns the recorder of the calls made using the specified retry configuration to the
+     * specified host. Looking up an existing recorder doesn't allocate.
+     */
+    CallMetrics forCall(@NonNull String retryName, String host) {
+        String hostKey = host == null ? NO_HOST : host;
+        Map<String, CallMetrics> byHost = metrics.get(retryName);
+        if (byHost == null) {
+            byHost = metrics.computeIfAbsent(retryName, name -> new ConcurrentHashMap<>());
+        }
+        CallMetrics result = byHost.get(hostKey);
+        if (result == null) {
+            result = byHost.computeIfAbsent(hostKey, h -> new CallMetrics(retryName, host));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the adaptive concurrency limit of each target host. The limit grows by one
+ * while attempts succeed and shrinks by {@link #backoffRatio} whenever the host shows signs of
+ * overload: a 429, 503 or 504 response, a timeout, or an attempt slower than {@link #maxLatency}.
+ */
+@Builder
+@ToString
+public class ConcurrencyLimitConfig {
+
+    @Builder.Default
+    @Getter
+    private int initialLimit = 20;
+
+    @Builder.Default
+    @Getter
+    private int minLimit = 1;
+
+    @Builder.Default
+    @Getter
+    private int maxLimit = 200;
+
+    /**
+     * The factor the limit is multiplied by when the host shows signs of overload.
+     */
+    @Builder.Default
+    @Getter
+    private double backoffRatio = 0.9;
+
+    /**
+     * Attempts slower than this count as a sign of overload.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration maxLatency = Duration.ofSeconds(5);
+
+    /**
+     * How long an attempt over the limit waits for a slot before it is rejected. Zero rejects it at once.
+     * Asynchronous attempts never wait.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration maxQueueTime = Duration.ZERO;
+}
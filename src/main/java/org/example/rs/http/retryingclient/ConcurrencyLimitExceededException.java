@@ -0,0 +1,19 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Getter;
+
+/**
+ * This exception tells the client that an attempt wasn't sent because the concurrency limit of its
+ * target host was reached.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    @Getter
+    private final String host;
+
+    public ConcurrencyLimitExceededException(String host, int limit) {
+        super("Concurrency limit of " + limit + " reached for host " + host);
+        this.host = host;
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.NonNull;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which a request, including all its attempts and the waits between them,
+ * has to complete.
+ */
+class Deadline {
+    private final Duration timeout;
+    private final long deadlineNanos;
+
+    private Deadline(Duration timeout, long deadlineNanos) {
+        this.timeout = timeout;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Returns the deadline that is the specified {@code timeout} from now.
+     */
+    static Deadline after(@NonNull Duration timeout) {
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "invalid timeout: %s", timeout);
+        return new Deadline(timeout, System.nanoTime() + timeout.toNanos());
+    }
+
+    Duration getTimeout() {
+        return timeout;
+    }
+
+    long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Checks whether waiting for the specified time would take past the deadline.
+     */
+    boolean isExceededBy(long waitMillis) {
+        return remainingNanos() <= waitMillis * 1_000_000L;
+    }
+
+    /**
+     * Returns the remaining time in milliseconds, at least 1 and at most {@code maxMillis}, usable as
+     * a connect or read timeout. A {@code maxMillis} of zero or less means no maximum.
+     */
+    int remainingTimeoutMillis(int maxMillis) {
+        long remainingMillis = Math.max(1, (remainingNanos() + 999_999) / 1_000_000);
+        if (maxMillis > 0) {
+            remainingMillis = Math.min(remainingMillis, maxMillis);
+        }
+        return (int) Math.min(remainingMillis, Integer.MAX_VALUE);
+    }
+
+    DeadlineExceededException exceeded(Throwable cause) {
+        return new DeadlineExceededException(timeout, cause);
+    }
+}
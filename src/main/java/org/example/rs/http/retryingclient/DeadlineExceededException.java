@@ -0,0 +1,25 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * This exception tells the client that a request didn't complete within its timeout, across all its
+ * attempts and the waits between them.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    @Getter
+    private final Duration timeout;
+
+    public DeadlineExceededException(Duration timeout) {
+        this(timeout, null);
+    }
+
+    public DeadlineExceededException(Duration timeout, Throwable cause) {
+        super("Deadline of " + timeout + " exceeded", cause);
+        this.timeout = timeout;
+    }
+}
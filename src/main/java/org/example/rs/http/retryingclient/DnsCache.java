@@ -0,0 +1,71 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.NonNull;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches the addresses host names resolve to, so that opening a connection doesn't wait for a DNS
+ * lookup. Hosts are resolved again in the background once they have been cached for a while, and
+ * their previous addresses are used in the meantime. Failed lookups aren't cached.
+ *
+ * A pooled client resolves hosts through a DNS cache if {@link PooledTransportConfig#getDnsCache()}
+ * is set.
+ */
+public class DnsCache implements DnsResolver {
+    private static final Executor REFRESH_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("http-api-client-dns-%d").setDaemon(true).build());
+
+    private final LoadingCache<String, InetAddress[]> cache;
+
+    public DnsCache(@NonNull DnsCacheConfig config) {
+        this(config, SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    DnsCache(@NonNull DnsCacheConfig config, @NonNull DnsResolver delegate) {
+        Preconditions.checkArgument(config.getMaxEntries() > 0, "non-positive value: %s", config.getMaxEntries());
+        Preconditions.checkArgument(config.getRefreshAfter().compareTo(config.getTtl()) < 0,
+                "refreshAfter %s must be shorter than ttl %s", config.getRefreshAfter(), config.getTtl());
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(config.getMaxEntries())
+                .expireAfterWrite(config.getTtl())
+                .refreshAfterWrite(config.getRefreshAfter())
+                .build(CacheLoader.asyncReloading(new CacheLoader<String, InetAddress[]>() {
+                    @Override
+                    public InetAddress[] load(String host) throws UnknownHostException {
+                        return delegate.resolve(host);
+                    }
+                }, REFRESH_EXECUTOR));
+    }
+
+    @Override
+    public InetAddress[] resolve(@NonNull String host) throws UnknownHostException {
+        try {
+            // Callers may reorder the addresses, e.g. to try them in turn
+            return cache.get(host).clone();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            UnknownHostException result = new UnknownHostException(host);
+            result.initCause(e.getCause());
+            throw result;
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
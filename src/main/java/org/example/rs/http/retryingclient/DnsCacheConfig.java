@@ -0,0 +1,42 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Configuration of a {@link DnsCache}.
+ */
+@Builder
+@ToString
+public class DnsCacheConfig {
+
+    /**
+     * How long a resolved host may be used for. A lookup of a host resolved longer ago than that
+     * resolves it again on the calling thread.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration ttl = Duration.ofMinutes(5);
+
+    /**
+     * How long after being resolved a host is resolved again in the background, the next time it
+     * is looked up. Meanwhile, and if resolving it again fails, the previous addresses are used
+     * until the {@link #ttl} is over.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration refreshAfter = Duration.ofSeconds(30);
+
+    /**
+     * The maximum number of hosts cached. The least recently used ones are evicted first.
+     */
+    @Builder.Default
+    @Getter
+    private int maxEntries = 1000;
+}
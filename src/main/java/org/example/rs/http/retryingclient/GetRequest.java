@@ -1,14 +1,16 @@
 package org.example.rs.http.retryingclient;
 
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
-@Builder
+@Builder(toBuilder = true)
 @ToString
 public class GetRequest {
     @NonNull
@@ -26,4 +28,18 @@ public class GetRequest {
     @Builder.Default
     @Getter
     private Map<String, String> queryParams = new HashMap<>();
+
+    /**
+     * The total time allowed for the request when it's invoked with retries, across all its attempts
+     * and the waits between them. If null, the timeout of its retry name, if any, applies.
+     */
+    @Getter
+    private Duration timeout;
+
+    /**
+     * The template the request was bound from, if any. Only set by {@link RequestTemplate#bind(Object...)}.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @ToString.Exclude
+    private RequestTemplate.Binding binding;
 }
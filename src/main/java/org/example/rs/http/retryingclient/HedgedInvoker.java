@@ -0,0 +1,172 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Sends a hedge for an attempt that is taking too long, based on a {@link HedgingConfig}.
+ *
+ * Hedges are charged to a token bucket that is refilled by every attempt, so that hedging
+ * can add at most {@link HedgingConfig#getMaxHedgeRatio()} to the load on the server.
+ */
+@Slf4j
+class HedgedInvoker {
+    @Getter
+    private final HedgingConfig config;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final RetryBudget hedgeBudget;
+
+    HedgedInvoker(@NonNull HedgingConfig config) {
+        Preconditions.checkArgument(config.getDelayPercentile() >= 0.0 && config.getDelayPercentile() < 1.0,
+                "invalid percentile: %s", config.getDelayPercentile());
+        this.config = config;
+        this.hedgeBudget = new RetryBudget(RetryBudgetConfig.builder()
+                .retryRatio(config.getMaxHedgeRatio())
+                .maxRetries(config.getMaxHedgeBurst())
+                .build());
+    }
+
+    /**
+     * Makes an attempt, hedging it if it takes too long.
+     *
+     * @param attemptSupp starts a copy of the attempt
+     * @param isGood tells whether a response can be handed to the caller as-is, rather than
+     *               waiting for the other copy
+     * @param scheduler schedules the hedge
+     * @return a stage that completes with the first good response, or the last one if none is good
+     */
+    CompletionStage<Response> invoke(@NonNull Supplier<CompletionStage<Response>> attemptSupp,
+                                     @NonNull Predicate<Response> isGood,
+                                     @NonNull ScheduledExecutorService scheduler) {
+        hedgeBudget.onFirstAttempt();
+        HedgedCall call = new HedgedCall(attemptSupp, isGood);
+        call.launch();
+        long delayNanos = currentDelay().toNanos();
+        // Hedges are started off the scheduler's thread, which is shared, as they may complete the promise
+        call.hedgeTimer = scheduler.schedule(() -> CompletableFuture.runAsync(call::hedge), delayNanos,
+                TimeUnit.NANOSECONDS);
+        return call.promise;
+    }
+
+    /**
+     * Blocking counterpart of {@link #invoke(Supplier, Predicate, ScheduledExecutorService)}.
+     */
+    Response invokeAndWait(Supplier<CompletionStage<Response>> attemptSupp, Predicate<Response> isGood,
+                           ScheduledExecutorService scheduler) {
+        try {
+            return invoke(attemptSupp, isGood, scheduler).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of hedges that may currently be sent.
+     */
+    double getAvailableHedges() {
+        return hedgeBudget.getAvailableRetries();
+    }
+
+    private Duration currentDelay() {
+        if (config.getDelayPercentile() > 0 && latencies.getCount() >= config.getMinSamples()) {
+            return latencies.getValueAtPercentile(config.getDelayPercentile());
+        }
+        return config.getDelay();
+    }
+
+    /**
+     * The copies of one attempt. Completes its {@link #promise} with the first good response, or
+     * with the outcome of the copy that completed last if none was good. Responses of the other
+     * copies are closed as they arrive, as in-flight JAX-RS invocations can't be aborted reliably.
+     */
+    private class HedgedCall {
+        private final Supplier<CompletionStage<Response>> attemptSupp;
+        private final Predicate<Response> isGood;
+        private final CompletableFuture<Response> promise = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private volatile ScheduledFuture<?> hedgeTimer;
+        private int outstanding = 0;
+
+        HedgedCall(Supplier<CompletionStage<Response>> attemptSupp, Predicate<Response> isGood) {
+            this.attemptSupp = attemptSupp;
+            this.isGood = isGood;
+        }
+
+        void launch() {
+            synchronized (this) {
+                outstanding++;
+            }
+            start();
+        }
+
+        void hedge() {
+            synchronized (this) {
+                if (promise.isDone()) {
+                    return;
+                }
+                if (!hedgeBudget.tryAcquireRetry()) {
+                    log.debug("Hedge budget exhausted, not hedging");
+                    return;
+                }
+                outstanding++;
+            }
+            log.debug("Attempt not completed after {} ms, hedging", (System.nanoTime() - startNanos) / 1_000_000);
+            start();
+        }
+
+        private void start() {
+            CompletionStage<Response> stage;
+            try {
+                stage = attemptSupp.get();
+            } catch (RuntimeException e) {
+                onCopyComplete(null, e);
+                return;
+            }
+            stage.whenComplete(this::onCopyComplete);
+        }
+
+        private void onCopyComplete(Response result, Throwable throwable) {
+            boolean good = throwable == null && isGood.test(result);
+            boolean completesPromise;
+            synchronized (this) {
+                outstanding--;
+                completesPromise = !promise.isDone() && (good || outstanding == 0);
+            }
+            if (!completesPromise) {
+                // Either another copy already won, or this failed one waits for the other copy.
+                ResponseHelper.drainAndClose(result);
+                return;
+            }
+
+            ScheduledFuture<?> timer = hedgeTimer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (good) {
+                latencies.record(System.nanoTime() - startNanos);
+            }
+            if (throwable != null) {
+                promise.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable);
+            } else {
+                promise.complete(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Configuration of hedged requests: if an attempt hasn't completed within a delay, a second
+ * copy of it is sent and whichever copy returns a good response first wins.
+ */
+@Builder
+@ToString
+public class HedgingConfig {
+
+    /**
+     * How long to wait for an attempt before sending the hedge. If a {@link #delayPercentile} is
+     * configured, this is used until enough latencies have been observed.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration delay = Duration.ofMillis(100);
+
+    /**
+     * If positive, the hedge is sent once an attempt has taken longer than this percentile
+     * (e.g. 0.95) of the latencies of the good responses observed so far.
+     */
+    @Builder.Default
+    @Getter
+    private double delayPercentile = 0.0;
+
+    /**
+     * The number of observed latencies needed before {@link #delayPercentile} is used.
+     */
+    @Builder.Default
+    @Getter
+    private int minSamples = 100;
+
+    /**
+     * The fraction of attempts that may be hedged, which caps the extra load hedging causes.
+     */
+    @Builder.Default
+    @Getter
+    private double maxHedgeRatio = 0.1;
+
+    /**
+     * The maximum number of hedges that can be sent in a burst.
+     */
+    @Builder.Default
+    @Getter
+    private int maxHedgeBurst = 10;
+}
@@ -0,0 +1,47 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Settings of the transport used by a client created using
+ * {@link ClientHelper#http2Client(Http2TransportConfig)}.
+ */
+@Builder
+@ToString
+public class Http2TransportConfig {
+
+    /**
+     * The preferred HTTP version. With HTTP/2, concurrent requests to a host are multiplexed over a
+     * single connection; hosts that don't support it are talked to using HTTP/1.1.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration connectTimeout = Duration.ofMillis(ClientHelper.DEFAULT_CONNECT_TIMEOUT);
+
+    /**
+     * How long to wait for the response headers of a request, once it's sent.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration readTimeout = Duration.ofMillis(ClientHelper.DEFAULT_READ_TIMEOUT);
+
+    /**
+     * If set, runs the transport's asynchronous tasks, rather than the JDK's default executor.
+     */
+    @Getter
+    private Executor executor;
+}
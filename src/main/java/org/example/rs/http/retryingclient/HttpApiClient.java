@@ -1,20 +1,59 @@
 package org.example.rs.http.retryingclient;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
 import io.github.resilience4j.retry.RetryRegistry;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 @Slf4j
 /**
@@ -30,17 +69,46 @@ import java.util.function.Supplier;
  */
 public class HttpApiClient {
     private static final String DEFAULT_RETRY_NAME = "defaultRetry";
-    private static final int DEFAULT_CONNECT_TIMEOUT = 30 * 60 * 1000; // 30 minutes
-    private static final int DEFAULT_READ_TIMEOUT = 90 * 60 * 1000; // 90 minutes
+
+    /**
+     * The header telling the server the actual method of a PATCH request sent as a POST.
+     */
+    static final String METHOD_OVERRIDE_HEADER = "X-HTTP-Method-Override";
+
+    /**
+     * Makes a single attempt, for the requests that mustn't be retried.
+     */
+    private static final Retry NO_RETRY = Retry.of("noRetry", RetryConfig.custom()
+            .maxAttempts(1)
+            .retryOnException(e -> false)
+            .build());
+
+    /**
+     * Schedules the waits between asynchronous attempts and the hedges. It only ever hands the next
+     * attempt or hedge over to the default async pool of {@link CompletableFuture}, which starts it
+     * and completes the caller's stage if need be, so a single daemon thread is enough for all
+     * instances.
+     */
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("http-api-client-retry-%d").setDaemon(true).build());
 
     private final Client client;
+    private final boolean overridesPatch;
     private final RetryRegistry retryRegistry;
+    private final Map<String, RetryBudget> retryBudgets = new ConcurrentHashMap<>();
+    private final Map<String, Duration> timeouts = new ConcurrentHashMap<>();
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final Map<String, HedgedInvoker> hedgedInvokers = new ConcurrentHashMap<>();
+    private final Map<String, LoadBalancer> loadBalancers = new ConcurrentHashMap<>();
+    private volatile CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Map<String, AdaptiveConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private volatile ConcurrencyLimitConfig concurrencyLimitConfig;
+    private volatile RequestCoalescer requestCoalescer;
+    private volatile ResponseCacheConfig responseCacheConfig;
+    private boolean compressionEnabled;
 
     public HttpApiClient() {
-        this(ClientBuilder.newBuilder()
-                .property(ClientProperties.CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT)
-                .property(ClientProperties.READ_TIMEOUT, DEFAULT_READ_TIMEOUT)
-                .build());
+        this(ClientHelper.defaultClient());
     }
 
     public HttpApiClient(@NonNull Client client) {
@@ -52,13 +120,20 @@ public class HttpApiClient {
     public HttpApiClient(@NonNull Client client, @NonNull RetryConfig defaultRetryConfig) {
         this.retryRegistry = RetryRegistry.of(defaultRetryConfig);
         this.client = client;
+        // Replays cached and coalesced responses without building a client runtime per response
+        this.client.register(new ResponseSnapshot.ReplayingFilter());
+        Configuration configuration = client.getConfiguration();
+        this.overridesPatch = configuration instanceof ClientConfig
+                && ((ClientConfig) configuration).getConnectorProvider() instanceof HttpUrlConnectorProvider;
+
+        // Subscribe once per Retry, when the registry creates it, rather than once per request.
+        this.retryRegistry.getEventPublisher().onEntryAdded(event -> event.getAddedEntry().getEventPublisher()
+                .onRetry(retryEvent -> log.info("Retrying. Num of retry attempts = {}",
+                        retryEvent.getNumberOfRetryAttempts())));
     }
 
     public HttpApiClient(@NonNull RetryConfig defaultRetryConfig) {
-        this(ClientBuilder.newBuilder()
-                .property(ClientProperties.CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT)
-                .property(ClientProperties.READ_TIMEOUT, DEFAULT_READ_TIMEOUT)
-                .build(), defaultRetryConfig);
+        this(ClientHelper.defaultClient(), defaultRetryConfig);
     }
 
     /**
@@ -71,6 +146,261 @@ public class HttpApiClient {
         this.retryRegistry.retry(name, retryConfig);
     }
 
+    /**
+     * Limits the retries made using the {@link RetryConfig} of the specified {@code retryName} to a
+     * fraction of the requests made using it. Once the budget is exhausted, a request that would
+     * otherwise be retried fails fast with the last response or exception received.
+     *
+     * @param retryName the name of the registry entry, or null for the default retry configuration
+     * @param budgetConfig the budget configuration
+     */
+    public void addRetryBudget(String retryName, @NonNull RetryBudgetConfig budgetConfig) {
+        this.retryBudgets.put(effectiveRetryName(retryName), new RetryBudget(budgetConfig));
+    }
+
+    /**
+     * Limits the total time of the requests made using the {@link RetryConfig} of the specified
+     * {@code retryName}, across all their attempts and the waits between them, unless a request
+     * specifies its own {@link GetRequest#getTimeout() timeout}.
+     *
+     * The connect and read timeouts of each attempt are cut down to the time left, the wait before
+     * an attempt is skipped if it would take past the deadline, and a request that runs out of time
+     * fails with a {@link DeadlineExceededException}.
+     *
+     * @param retryName the name of the registry entry, or null for the default retry configuration
+     * @param timeout the total time allowed for each request
+     */
+    public void addTimeout(String retryName, @NonNull Duration timeout) {
+        Preconditions.checkArgument(!timeout.isNegative() && !timeout.isZero(), "invalid timeout: %s", timeout);
+        this.timeouts.put(effectiveRetryName(retryName), timeout);
+    }
+
+    /**
+     * Returns the {@link RetryBudget} of the specified {@code retryName}, so that the callers
+     * can monitor how much of it is left.
+     *
+     * @param retryName the name of the registry entry, or null for the default retry configuration
+     * @return the retry budget, if one has been added
+     */
+    public Optional<RetryBudget> getRetryBudget(String retryName) {
+        return Optional.ofNullable(fetchRetryBudget(retryName));
+    }
+
+    /**
+     * Returns the metrics of the calls made by this client, per {@code retryName} and target host.
+     *
+     * @return the metrics
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables hedging of the requests made using the {@link RetryConfig} of the specified
+     * {@code retryName}: if an attempt hasn't completed within the configured delay, a second copy
+     * of it is sent and the first response that isn't to be retried wins.
+     *
+     * @param retryName the name of the registry entry, or null for the default retry configuration
+     * @param hedgingConfig the hedging configuration
+     */
+    public void addHedgingConfig(String retryName, @NonNull HedgingConfig hedgingConfig) {
+        this.hedgedInvokers.put(effectiveRetryName(retryName), new HedgedInvoker(hedgingConfig));
+    }
+
+    /**
+     * Adds a logical service, which requests address with targets of the form
+     * {@code service://<serviceName>/<path>}. Each attempt of such a request is sent to one of the
+     * endpoints of the service, picked by the power of two choices on outstanding attempts; retries
+     * prefer a different endpoint than the previous attempt, and endpoints that fail repeatedly are
+     * ejected for a while.
+     *
+     * Circuit breakers, concurrency limits and metrics apply to the service as a whole.
+     *
+     * @param serviceName the name of the service
+     * @param endpoints the base URLs of the endpoints, e.g. {@code http://10.0.0.1:8080/api}
+     * @param config the configuration of the ejection of failing endpoints
+     */
+    public void addService(@NonNull String serviceName, @NonNull List<String> endpoints,
+                           @NonNull LoadBalancerConfig config) {
+        this.loadBalancers.put(serviceName, new LoadBalancer(serviceName, endpoints, config));
+    }
+
+    /**
+     * Returns the load balancer of the specified logical service, so that callers can monitor its endpoints.
+     *
+     * @param serviceName the name of the service
+     * @return the load balancer, if the service has been added
+     */
+    public Optional<LoadBalancer> getLoadBalancer(@NonNull String serviceName) {
+        return Optional.ofNullable(loadBalancers.get(serviceName));
+    }
+
+    /**
+     * Enables a circuit breaker per target host. Attempts to a host whose breaker is open are
+     * rejected with a {@link io.github.resilience4j.circuitbreaker.CallNotPermittedException}
+     * without being sent or retried.
+     *
+     * @param circuitBreakerConfig the configuration of the circuit breakers, e.g. one created using
+     *                             {@link CircuitBreakerConfigHelper}
+     */
+    public void enableCircuitBreakers(@NonNull CircuitBreakerConfig circuitBreakerConfig) {
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+    }
+
+    /**
+     * Enables an adaptive concurrency limit per target host, which caps the attempts in flight to the
+     * host and adapts to its latency and to its signs of overload. Attempts over the limit are rejected
+     * with a {@link ConcurrencyLimitExceededException}, after waiting for a slot for up to the configured
+     * queue time.
+     *
+     * @param concurrencyLimitConfig the configuration of the limits
+     */
+    public void enableConcurrencyLimits(@NonNull ConcurrencyLimitConfig concurrencyLimitConfig) {
+        this.concurrencyLimitConfig = concurrencyLimitConfig;
+        this.concurrencyLimiters.clear();
+    }
+
+    /**
+     * Returns the concurrency limiter of the specified host, so that callers can monitor its limit
+     * and the attempts in flight.
+     *
+     * @param host the host name
+     * @return the concurrency limiter, if concurrency limits are enabled
+     */
+    public Optional<AdaptiveConcurrencyLimiter> getConcurrencyLimiter(@NonNull String host) {
+        return Optional.ofNullable(fetchConcurrencyLimiter(host));
+    }
+
+    /**
+     * Enables compression of responses: requests tell the server, using {@code Accept-Encoding}, that
+     * gzip and deflate encoded responses are accepted, and encoded response entities are decompressed
+     * while they are read, whether they are read as a whole or streamed.
+     *
+     * The encoders are registered on the underlying {@link Client}, so they apply to every request
+     * made using it.
+     */
+    public synchronized void enableCompression() {
+        if (compressionEnabled) {
+            return;
+        }
+        // Registered once on the client, rather than on each request's target, which would build a
+        // client runtime per request
+        client.register(GZipEncoder.class).register(DeflateEncoder.class).register(EncodingFilter.class);
+        this.compressionEnabled = true;
+    }
+
+    /**
+     * Enables coalescing of identical requests: while a request is in flight, callers making an
+     * identical request (same target, query parameters, headers, accepted response, timeout and
+     * {@code retryName}) wait for it and share its response, rather than invoking it themselves.
+     * The entity of a response is only buffered if other callers share it, so each of them can read
+     * it. Callers never wait past their own timeout.
+     */
+    public void enableRequestCoalescing() {
+        this.requestCoalescer = new RequestCoalescer();
+    }
+
+    /**
+     * Enables caching of 200/OK responses that carry a {@code Cache-Control: max-age} or can be
+     * revalidated using their {@code ETag} or {@code Last-Modified} header. Fresh responses are served
+     * from the cache, stale ones are revalidated using a conditional request and served from the cache
+     * if the server answers 304/Not Modified.
+     *
+     * Responses are cached per target, query parameters and request headers. Responses that are
+     * {@code private} or {@code Vary: *}, and responses to requests carrying an {@code Authorization}
+     * header, are never cached.
+     *
+     * The cache is used by every attempt of a request, whether it's made synchronously or
+     * asynchronously, and by each copy of a hedged attempt. Stale responses are only served on error
+     * to synchronous requests.
+     *
+     * @param cacheConfig the cache configuration
+     */
+    public void enableResponseCache(@NonNull ResponseCacheConfig cacheConfig) {
+        this.responseCacheConfig = cacheConfig;
+    }
+
+    /**
+     * Returns the circuit breaker of the specified {@code host}.
+     *
+     * @param host the host name
+     * @return the circuit breaker, if circuit breakers are enabled
+     */
+    public Optional<CircuitBreaker> getCircuitBreaker(@NonNull String host) {
+        CircuitBreakerRegistry registry = this.circuitBreakerRegistry;
+        return registry == null ? Optional.empty() : Optional.of(registry.circuitBreaker(host));
+    }
+
+    /**
+     * Gets ready to serve requests to the specified targets at full speed, e.g. before reporting the
+     * application ready: initializes the underlying client, resolves the hosts of the targets and
+     * opens connections to them by sending {@code HEAD} requests, which aren't retried. A pooled
+     * client keeps the connections for the following requests, up to its per-host limit.
+     *
+     * The hosts are resolved through the {@link DnsCache} of a pooled client that has one, else
+     * through the JVM's own cache. A {@code service://} target warms up every endpoint of the service.
+     *
+     * @param targets the URLs to send the requests to, e.g. health check endpoints
+     * @param connectionsPerTarget the number of concurrent requests sent to each target
+     * @param timeout the maximum time the warm-up may take
+     * @return true if every request got a response within the timeout, whatever its status, else false
+     */
+    public boolean warmUp(@NonNull Collection<String> targets, int connectionsPerTarget, @NonNull Duration timeout) {
+        Preconditions.checkArgument(connectionsPerTarget > 0, "non-positive value: %s", connectionsPerTarget);
+        Deadline deadline = Deadline.after(timeout);
+        Object clientDnsCache = client.getConfiguration().getProperty(ClientHelper.DNS_CACHE);
+        DnsResolver dnsResolver = clientDnsCache instanceof DnsResolver
+                ? (DnsResolver) clientDnsCache
+                : SystemDefaultDnsResolver.INSTANCE;
+        boolean result = true;
+        List<CompletableFuture<Response>> responses = new ArrayList<>();
+        for (String target : warmUpTargets(targets)) {
+            String host = TargetHosts.hostOf(target);
+            try {
+                if (host != null) {
+                    dnsResolver.resolve(host);
+                }
+            } catch (UnknownHostException e) {
+                log.warn("Failed to resolve host {} during warm-up", host);
+                result = false;
+                continue;
+            }
+            for (int i = 0; i < connectionsPerTarget; i++) {
+                responses.add(requestBuilder(target, Collections.emptyMap(), MediaType.WILDCARD,
+                        Collections.emptyMap(), deadline).rx().head().toCompletableFuture());
+            }
+        }
+        for (CompletableFuture<Response> response : responses) {
+            try {
+                response.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS).close();
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("Warm-up request failed: {}", e.toString());
+                // Release the connection of a response that arrives late
+                response.thenAccept(Response::close);
+                result = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                responses.forEach(r -> r.thenAccept(Response::close));
+                return false;
+            }
+        }
+        log.debug("Warm-up of {} targets done, all successful: {}", targets.size(), result);
+        return result;
+    }
+
+    private List<String> warmUpTargets(Collection<String> targets) {
+        List<String> result = new ArrayList<>();
+        for (String target : targets) {
+            LoadBalancer loadBalancer = fetchLoadBalancer(target);
+            if (loadBalancer == null) {
+                result.add(target);
+            } else {
+                loadBalancer.getEndpoints().forEach(endpoint -> result.add(endpoint.resolve(target)));
+            }
+        }
+        return result;
+    }
+
     /**
      * Invokes the specified {@code request}, then fetches and returns the
      * {@link Response}.
@@ -79,29 +409,125 @@ public class HttpApiClient {
      * based on the {@link Retry} linked with the specified {@code retryName}. If
      * an entry specified by the {@code retryName} is null, uses a default
      *
+     * Responses of attempts that are retried are drained and closed, so that their
+     * connections are released.
+     *
+     * If request coalescing is enabled, identical requests made concurrently share one invocation.
+     *
+     * If the request or its {@code retryName} has a timeout, the request fails with a
+     * {@link DeadlineExceededException} when it runs out of time.
+     *
      * @param request an object representing the HTTP GET request
      * @param retryName the name of the {@link RetryConfig} to use
      * @return
      */
     public Response getWithRetries(@NonNull GetRequest request, String retryName) {
-        return getWithRetries(request, retryName, () -> {
-            Response result = get(request);
-            return result;
-        });
+        return executeWithRetries(request, retryName, UnaryOperator.identity());
+    }
+
+    /**
+     * Does what {@link #getWithRetries(GetRequest, String)} does, except that each attempt is made
+     * through the specified {@code attemptDecorator}.
+     */
+    private Response executeWithRetries(GetRequest request, String retryName,
+                                        UnaryOperator<Supplier<Response>> attemptDecorator) {
+        Deadline deadline = fetchDeadline(request.getTimeout(), retryName);
+        RequestCoalescer coalescer = this.requestCoalescer;
+        if (coalescer == null) {
+            return invokeWithRetries(request, retryName, deadline, attemptDecorator);
+        }
+        return coalescer.execute(request, retryName, deadline,
+                () -> invokeWithRetries(request, retryName, deadline, attemptDecorator),
+                snapshot -> replay(request, snapshot));
+    }
+
+    /**
+     * Invokes the specified request with retries, serving a stale cached response if they are
+     * exhausted and the response cache is configured to do so.
+     */
+    private Response invokeWithRetries(GetRequest request, String retryName, Deadline deadline,
+                                       UnaryOperator<Supplier<Response>> attemptDecorator) {
+        ResponseCacheConfig cacheConfig = this.responseCacheConfig;
+        if (cacheConfig == null || !cacheConfig.isServeStaleOnError()) {
+            return invokeAttemptsWithRetries(request, retryName, deadline, attemptDecorator);
+        }
+
+        Response result;
+        try {
+            result = invokeAttemptsWithRetries(request, retryName, deadline, attemptDecorator);
+        } catch (RuntimeException e) {
+            Response stale = fetchStaleResponse(request, cacheConfig);
+            if (stale == null) {
+                throw e;
+            }
+            log.warn("Serving stale cached response for uri {} after exception {}", request.getTarget(), e.toString());
+            return stale;
+        }
+        if (result.getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR) {
+            Response stale = fetchStaleResponse(request, cacheConfig);
+            if (stale != null) {
+                log.warn("Serving stale cached response for uri {} after response status code {}",
+                        request.getTarget(), result.getStatus());
+                ResponseHelper.drainAndClose(result);
+                return stale;
+            }
+        }
+        return result;
+    }
+
+    private Response invokeAttemptsWithRetries(GetRequest request, String retryName, Deadline deadline,
+                                               UnaryOperator<Supplier<Response>> attemptDecorator) {
+        LoadBalancer loadBalancer = fetchLoadBalancer(request.getTarget());
+        HedgedInvoker hedgedInvoker = fetchHedgedInvoker(retryName);
+        if (hedgedInvoker == null) {
+            Supplier<Response> attemptSupp = loadBalancer == null
+                    ? () -> get(request, deadline)
+                    : loadBalancer.attempts(request, resolved -> get(resolved, deadline));
+            return getWithRetries(request, retryName, deadline, attemptDecorator.apply(attemptSupp));
+        }
+        Supplier<CompletionStage<Response>> copySupp = loadBalancer == null
+                ? () -> getAsync(request, deadline)
+                : loadBalancer.asyncAttempts(request, resolved -> getAsync(resolved, deadline));
+        Predicate<Response> isGood = isGoodResponse(retryName);
+        return getWithRetries(request, retryName, deadline, attemptDecorator.apply(
+                () -> hedgedInvoker.invokeAndWait(copySupp, isGood, RETRY_SCHEDULER)));
     }
 
     @VisibleForTesting
     Response getWithRetries(@NonNull GetRequest request, String retryName, @NonNull Supplier<Response> responseSupp) {
+        return getWithRetries(request, retryName, fetchDeadline(request.getTimeout(), retryName), responseSupp);
+    }
+
+    private Response getWithRetries(GetRequest request, String retryName, Deadline deadline,
+                                    Supplier<Response> responseSupp) {
         log.trace("GetRequest = {}, retryName = {}", request, retryName);
-        Retry retry = fetchRetry(retryName);
-        Supplier<Response> decoratedSupp = Retry.decorateSupplier(retry, responseSupp);
-
-        Response result = decoratedSupp.get();
-        Response.StatusType statusInfo = result.getStatusInfo();
-        log.debug("Response status for uri {}: code = {}, family = {}, reason = {}", request.getTarget(),
-                statusInfo.getStatusCode(),
-                statusInfo.getFamily(),
-                statusInfo.getReasonPhrase());
+        return invokeAttempts(request.getTarget(), TargetHosts.hostOf(request), fetchRetry(retryName), retryName,
+                deadline, responseSupp);
+    }
+
+    /**
+     * Makes the attempts of a request to the specified target through its host's circuit breaker and
+     * concurrency limiter, if any, retrying based on the specified {@code retry}.
+     */
+    private Response invokeAttempts(String target, String host, Retry retry, String retryName, Deadline deadline,
+                                    Supplier<Response> responseSupp) {
+        CircuitBreaker circuitBreaker = fetchCircuitBreaker(host);
+        if (circuitBreaker != null) {
+            responseSupp = CircuitBreaker.decorateSupplier(circuitBreaker, responseSupp);
+        }
+        AdaptiveConcurrencyLimiter concurrencyLimiter = fetchConcurrencyLimiter(host);
+        if (concurrencyLimiter != null) {
+            responseSupp = concurrencyLimiter.decorate(responseSupp);
+        }
+        Response result = RetryingInvoker.invoke(retry, fetchRetryBudget(retryName),
+                fetchCallMetrics(host, retryName), deadline, responseSupp);
+        if (log.isDebugEnabled()) {
+            Response.StatusType statusInfo = result.getStatusInfo();
+            log.debug("Response status for uri {}: code = {}, family = {}, reason = {}", target,
+                    statusInfo.getStatusCode(),
+                    statusInfo.getFamily(),
+                    statusInfo.getReasonPhrase());
+        }
         return result;
     }
 
@@ -118,31 +544,429 @@ public class HttpApiClient {
     public <T> T getWithRetries(@NonNull Class<T> clazz, @NonNull GetRequest request,
                                 String retryName) {
         Response response = getWithRetries(request, retryName);
-        if (response.getStatusInfo().equals(Response.Status.OK)) {
-            return response.readEntity(clazz);
-        } else {
+        return readEntityIfOk(clazz, response);
+    }
+
+    /**
+     * Invokes the specified request, retries based on specified {@code retryName}, then returns a
+     * stream of the elements of the JSON array in the response, each unmarshalled into an object of the
+     * specified {@code clazz}.
+     *
+     * The elements are read from the response incrementally as the stream is consumed, so a large
+     * array is never held in memory as a whole. Retries only happen before the stream is returned.
+     * The stream must be closed, which closes the response.
+     *
+     * @param clazz the type of the array elements
+     * @param request an object representing the HTTP GET request
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @param <T> the type of the array elements
+     * @return the stream of elements
+     * @throws ResponseNotOkException if the last response is not 200/OK
+     */
+    public <T> Stream<T> getWithRetriesAsStream(@NonNull Class<T> clazz, @NonNull GetRequest request,
+                                                String retryName) {
+        Response response = getWithRetries(request, retryName);
+        if (!response.getStatusInfo().equals(Response.Status.OK)) {
             throw new ResponseNotOkException(response);
         }
+        return JsonArraySpliterator.stream(clazz, response);
+    }
+
+    /**
+     * Fetches the pages of a paginated API, starting with the specified {@code firstPage}, and publishes
+     * each page unmarshalled into an object of the specified {@code clazz}.
+     *
+     * Each page is fetched asynchronously with retries based on the specified {@code retryName}. Up to
+     * {@code prefetch} pages are fetched ahead of the subscriber's demand, so the next page is fetched
+     * while the subscriber works on the current one, and no more pages than that are held in memory.
+     * A page whose last response is not 200/OK ends the stream with a {@link ResponseNotOkException}.
+     *
+     * @param clazz the type to unmarshall the pages into
+     * @param firstPage the request for the first page
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @param nextPage tells how to request the page following a page, e.g. {@link NextPageResolver#linkHeader()}
+     * @param prefetch the maximum number of pages fetched ahead of the demand, at least 1
+     * @param <T> the type of the pages
+     * @return a publisher of the pages; each subscriber walks the pages from the first one
+     */
+    public <T> Flow.Publisher<T> getPagesWithRetries(@NonNull Class<T> clazz, @NonNull GetRequest firstPage,
+                                                     String retryName, @NonNull NextPageResolver<T> nextPage,
+                                                     int prefetch) {
+        return new PagePublisher<>(firstPage, request -> getWithRetriesAsync(request, retryName),
+                response -> readEntityIfOk(clazz, response), nextPage, prefetch);
+    }
+
+    /**
+     * Invokes the specified requests concurrently, each with retries based on the specified
+     * {@code retryName}, within the concurrency limits of the specified {@code batchConfig}.
+     *
+     * The limits apply to attempts: a request waiting to be retried doesn't count against them.
+     *
+     * @param requests the requests
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @param batchConfig the concurrency limits and deadline of the batch
+     * @return the last {@link Response} received or the exception thrown for each request, in the
+     *         order of the requests
+     */
+    public List<BatchResult<Response>> getAllWithRetries(@NonNull Collection<GetRequest> requests, String retryName,
+                                                         @NonNull BatchConfig batchConfig) {
+        return new BatchExecutor(batchConfig).execute(requests,
+                (request, attemptDecorator) -> executeWithRetries(request, retryName, attemptDecorator),
+                response -> response);
+    }
+
+    /**
+     * Does what {@link #getAllWithRetries(Collection, String, BatchConfig)} does, then unmarshalls each
+     * response into an object of the specified {@code clazz}. Requests whose last response is not
+     * 200/OK fail with a {@link ResponseNotOkException}.
+     *
+     * @param clazz the type to unmarshall the responses into
+     * @param requests the requests
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @param batchConfig the concurrency limits and deadline of the batch
+     * @param <T> the type of the response entities
+     * @return the unmarshalled entity or the exception thrown for each request, in the order of the requests
+     */
+    public <T> List<BatchResult<T>> getAllWithRetries(@NonNull Class<T> clazz, @NonNull Collection<GetRequest> requests,
+                                                      String retryName, @NonNull BatchConfig batchConfig) {
+        return new BatchExecutor(batchConfig).execute(requests,
+                (request, attemptDecorator) -> executeWithRetries(request, retryName, attemptDecorator),
+                response -> readEntityIfOk(clazz, response));
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #getWithRetries(GetRequest, String)}.
+     *
+     * Attempts are invoked using the async invoker of the underlying {@link Client} and the waits
+     * between attempts are scheduled rather than slept through, so no thread is held while the
+     * request is waiting to be retried.
+     *
+     * @param request an object representing the HTTP GET request
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @return a stage that completes with the last {@link Response} received
+     */
+    public CompletionStage<Response> getWithRetriesAsync(@NonNull GetRequest request, String retryName) {
+        Deadline deadline = fetchDeadline(request.getTimeout(), retryName);
+        LoadBalancer loadBalancer = fetchLoadBalancer(request.getTarget());
+        Supplier<CompletionStage<Response>> attemptSupp = loadBalancer == null
+                ? () -> getAsync(request, deadline)
+                : loadBalancer.asyncAttempts(request, resolved -> getAsync(resolved, deadline));
+        HedgedInvoker hedgedInvoker = fetchHedgedInvoker(retryName);
+        if (hedgedInvoker == null) {
+            return getWithRetriesAsync(request, retryName, deadline, attemptSupp);
+        }
+        Predicate<Response> isGood = isGoodResponse(retryName);
+        return getWithRetriesAsync(request, retryName, deadline,
+                () -> hedgedInvoker.invoke(attemptSupp, isGood, RETRY_SCHEDULER));
+    }
+
+    @VisibleForTesting
+    CompletionStage<Response> getWithRetriesAsync(@NonNull GetRequest request, String retryName,
+                                                  @NonNull Supplier<CompletionStage<Response>> responseSupp) {
+        return getWithRetriesAsync(request, retryName, fetchDeadline(request.getTimeout(), retryName), responseSupp);
+    }
+
+    private CompletionStage<Response> getWithRetriesAsync(GetRequest request, String retryName, Deadline deadline,
+                                                          Supplier<CompletionStage<Response>> responseSupp) {
+        log.trace("GetRequest = {}, retryName = {}", request, retryName);
+        Retry retry = fetchRetry(retryName);
+        String host = TargetHosts.hostOf(request);
+        CircuitBreaker circuitBreaker = fetchCircuitBreaker(host);
+        if (circuitBreaker != null) {
+            responseSupp = CircuitBreaker.decorateCompletionStage(circuitBreaker, responseSupp);
+        }
+        AdaptiveConcurrencyLimiter concurrencyLimiter = fetchConcurrencyLimiter(host);
+        if (concurrencyLimiter != null) {
+            responseSupp = concurrencyLimiter.decorateAsync(responseSupp);
+        }
+        return RetryingInvoker.invokeAsync(retry, fetchRetryBudget(retryName),
+                fetchCallMetrics(host, retryName), deadline, RETRY_SCHEDULER, responseSupp)
+                .thenApply(result -> {
+                    if (log.isDebugEnabled()) {
+                        Response.StatusType statusInfo = result.getStatusInfo();
+                        log.debug("Response status for uri {}: code = {}, family = {}, reason = {}",
+                                request.getTarget(),
+                                statusInfo.getStatusCode(),
+                                statusInfo.getFamily(),
+                                statusInfo.getReasonPhrase());
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #getWithRetries(Class, GetRequest, String)}. The returned stage
+     * completes exceptionally with a {@link ResponseNotOkException} if the last response is not 200/OK.
+     *
+     * @param clazz the type to unmarshall the response into
+     * @param request an object representing the HTTP GET request
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @param <T> the type of the response entity
+     * @return a stage that completes with the unmarshalled response entity
+     */
+    public <T> CompletionStage<T> getWithRetriesAsync(@NonNull Class<T> clazz, @NonNull GetRequest request,
+                                                      String retryName) {
+        return getWithRetriesAsync(request, retryName).thenApply(response -> readEntityIfOk(clazz, response));
+    }
+
+    /**
+     * Invokes the specified POST, PUT, PATCH or DELETE request, then fetches and returns the {@link Response}.
+     *
+     * If the invocation results in a retryable error, retries the request based on the {@link Retry}
+     * linked with the specified {@code retryName}, sending the same body on every attempt. POST and
+     * PATCH requests are only retried if they carry an idempotency key; unless the request says
+     * otherwise, one is generated for them, and it's the same for all the attempts of the request.
+     *
+     * {@link java.net.HttpURLConnection}, which the default client uses, can't send PATCH requests, so
+     * with that client they are sent as POST requests carrying an {@code X-HTTP-Method-Override: PATCH}
+     * header, which the server has to honor. Jersey's {@link HttpUrlConnectorProvider#SET_METHOD_WORKAROUND}
+     * isn't used, as it only works on JDK 16 and later if the JVM is started with
+     * {@code --add-opens java.base/java.net=ALL-UNNAMED}. The clients created by
+     * {@link ClientHelper#pooledClient(PooledTransportConfig)} and
+     * {@link ClientHelper#http2Client(Http2TransportConfig)} send actual PATCH requests.
+     *
+     * @param request an object representing the HTTP request
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @return the last {@link Response} received
+     */
+    public Response sendWithRetries(@NonNull WriteRequest request, String retryName) {
+        log.trace("WriteRequest = {}, retryName = {}", request, retryName);
+        Preconditions.checkArgument(!LoadBalancer.isServiceTarget(request.getTarget()),
+                "logical service targets are only supported by GET requests: %s", request.getTarget());
+        WriteRequest effectiveRequest = request;
+        if (!request.isIdempotentMethod() && !request.hasIdempotencyKey() && request.isGenerateIdempotencyKey()) {
+            Map<String, Object> headers = new HashMap<>(request.getHeaders());
+            headers.put(request.getIdempotencyKeyHeader(), UUID.randomUUID().toString());
+            effectiveRequest = request.toBuilder().headers(headers).build();
+        }
+        Retry retry = effectiveRequest.isIdempotentMethod() || effectiveRequest.hasIdempotencyKey()
+                ? fetchRetry(retryName)
+                : NO_RETRY;
+        Deadline deadline = fetchDeadline(request.getTimeout(), retryName);
+        WriteRequest attemptRequest = effectiveRequest;
+        return invokeAttempts(request.getTarget(), TargetHosts.hostOf(request.getTarget()), retry, retryName, deadline,
+                () -> send(attemptRequest, deadline));
+    }
+
+    /**
+     * Does what {@link #sendWithRetries(WriteRequest, String)} does, then unmarshalls the response
+     * into an object of the specified {@code clazz}.
+     *
+     * @param clazz the type to unmarshall the response into
+     * @param request an object representing the HTTP request
+     * @param retryName the name of the {@link RetryConfig} to use
+     * @param <T> the type of the response entity
+     * @return the unmarshalled response entity
+     * @throws ResponseNotOkException if the last response is not 200/OK
+     */
+    public <T> T sendWithRetries(@NonNull Class<T> clazz, @NonNull WriteRequest request, String retryName) {
+        return readEntityIfOk(clazz, sendWithRetries(request, retryName));
+    }
+
+    private Response send(WriteRequest request, Deadline deadline) {
+        Invocation.Builder requestBuilder = requestBuilder(request.getTarget(), request.getQueryParams(),
+                request.getAcceptedResponse(), request.getHeaders(), deadline);
+        String method = request.getMethod();
+        if (overridesPatch && "PATCH".equalsIgnoreCase(method)) {
+            // HttpURLConnection doesn't know PATCH
+            requestBuilder.header(METHOD_OVERRIDE_HEADER, method);
+            method = HttpMethod.POST;
+        }
+        RequestBody body = request.getBody();
+        if (body == null) {
+            return requestBuilder.method(method);
+        }
+        if (body.isStreamed()) {
+            // Otherwise the connector may buffer the whole body in memory to find its length
+            requestBuilder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+        }
+        if (HttpMethod.DELETE.equalsIgnoreCase(request.getMethod())) {
+            requestBuilder.property(ClientProperties.SUPPRESS_HTTP_COMPLIANCE_VALIDATION, true);
+        }
+        return requestBuilder.method(method, body.toEntity());
     }
 
     public <T> T get(@NonNull Class<T> clazz, @NonNull GetRequest request) {
-        WebTarget target = client.target(URI.create(request.getTarget()));
-        Response response = target.request(request.getAcceptedResponse()).get();
-        Response.StatusType statusType = response.getStatusInfo();
+        Response response = get(request);
+        return readEntityIfOk(clazz, response);
+    }
+
+    public Response get(@NonNull GetRequest request) {
+        return get(request, null);
+    }
+
+    private Response get(GetRequest request, Deadline deadline) {
+        ResponseCacheConfig cacheConfig = this.responseCacheConfig;
+        if (cacheConfig == null || hasAuthorization(request)) {
+            return requestBuilder(request, deadline).get();
+        }
+        return getUsingCache(request, deadline, cacheConfig.getCache());
+    }
+
+    public <T> CompletionStage<T> getAsync(@NonNull Class<T> clazz, @NonNull GetRequest request) {
+        return getAsync(request).thenApply(response -> readEntityIfOk(clazz, response));
+    }
+
+    public CompletionStage<Response> getAsync(@NonNull GetRequest request) {
+        return getAsync(request, null);
+    }
+
+    private CompletionStage<Response> getAsync(GetRequest request, Deadline deadline) {
+        ResponseCacheConfig cacheConfig = this.responseCacheConfig;
+        if (cacheConfig == null || hasAuthorization(request)) {
+            return requestBuilder(request, deadline).rx().get();
+        }
+        return getUsingCacheAsync(request, deadline, cacheConfig.getCache());
+    }
+
+    private Response getUsingCache(GetRequest request, Deadline deadline, ResponseCache cache) {
+        String key = cacheKey(request);
+        CachedResponse cached = cache.get(key);
+        Instant now = Instant.now();
+        if (cached != null && cached.isFresh(now)) {
+            log.debug("Serving fresh cached response for uri {}", request.getTarget());
+            return replay(request, cached.getSnapshot());
+        }
+        Response response = conditionalRequestBuilder(request, deadline, cached).get();
+        return onCacheMiss(request, key, cached, response, now, cache);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #getUsingCache(GetRequest, Deadline, ResponseCache)}, used by
+     * asynchronous and hedged attempts.
+     */
+    private CompletionStage<Response> getUsingCacheAsync(GetRequest request, Deadline deadline,
+                                                         ResponseCache cache) {
+        String key = cacheKey(request);
+        CachedResponse cached = cache.get(key);
+        Instant now = Instant.now();
+        if (cached != null && cached.isFresh(now)) {
+            log.debug("Serving fresh cached response for uri {}", request.getTarget());
+            return CompletableFuture.completedFuture(replay(request, cached.getSnapshot()));
+        }
+        return conditionalRequestBuilder(request, deadline, cached).rx().get()
+                .thenApply(response -> onCacheMiss(request, key, cached, response, now, cache));
+    }
+
+    /**
+     * Returns a builder of the specified request, made conditional on the validators of the
+     * specified stale cache entry, if any.
+     */
+    private Invocation.Builder conditionalRequestBuilder(GetRequest request, Deadline deadline,
+                                                         CachedResponse cached) {
+        Invocation.Builder requestBuilder = requestBuilder(request, deadline);
+        if (cached != null) {
+            if (cached.getEntityTag() != null) {
+                requestBuilder.header(HttpHeaders.IF_NONE_MATCH, cached.getEntityTag());
+            }
+            if (cached.getLastModified() != null) {
+                requestBuilder.header(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+            }
+        }
+        return requestBuilder;
+    }
+
+    /**
+     * Updates the cache with the response to a request that wasn't served from it, and returns the
+     * response to hand to the caller: the cached one if the server says it's still valid.
+     */
+    private Response onCacheMiss(GetRequest request, String key, CachedResponse cached, Response response,
+                                 Instant now, ResponseCache cache) {
+        if (cached != null && response.getStatusInfo().equals(Response.Status.NOT_MODIFIED)) {
+            log.debug("Cached response for uri {} revalidated", request.getTarget());
+            CachedResponse revalidated = cached.revalidated(response, now);
+            ResponseHelper.drainAndClose(response);
+            cache.put(key, revalidated);
+            return replay(request, revalidated.getSnapshot());
+        }
         if (response.getStatusInfo().equals(Response.Status.OK)) {
-            return response.readEntity(clazz);
-        } else {
-            throw new ResponseNotOkException(response);
+            CachedResponse fresh = CachedResponse.of(response, now);
+            if (fresh != null) {
+                cache.put(key, fresh);
+            } else if (cached != null) {
+                cache.remove(key);
+            }
         }
+        return response;
     }
 
-    public Response get(@NonNull GetRequest request) {
-        WebTarget target = client.target(request.getTarget());
-        request.getQueryParams().forEach((k, v) -> target.queryParam(k, v));
+    private Response fetchStaleResponse(GetRequest request, ResponseCacheConfig cacheConfig) {
+        if (hasAuthorization(request)) {
+            return null;
+        }
+        CachedResponse cached = cacheConfig.getCache().get(cacheKey(request));
+        if (cached == null || !cached.isUsableWhenStale(cacheConfig.getMaxStale(), Instant.now())) {
+            return null;
+        }
+        return replay(request, cached.getSnapshot().withHeader("Warning", "111 - \"Revalidation Failed\""));
+    }
+
+    /**
+     * Returns the key of the specified request in the response cache. It includes all the request
+     * headers, so that responses that vary by any of them, e.g. per tenant, are kept apart.
+     */
+    private static String cacheKey(GetRequest request) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        request.getHeaders().forEach((k, v) -> headers.put(k, String.valueOf(v)));
+        return request.getAcceptedResponse() + " " + request.getTarget() + " " + new TreeMap<>(request.getQueryParams())
+                + " " + headers;
+    }
+
+    /**
+     * Checks whether the specified request carries credentials, in which case its response is
+     * neither served from the cache nor stored in it, so it's never replayed to another caller.
+     */
+    private static boolean hasAuthorization(GetRequest request) {
+        return request.getHeaders().keySet().stream().anyMatch(HttpHeaders.AUTHORIZATION::equalsIgnoreCase);
+    }
+
+    /**
+     * Returns a readable {@link Response} built from the specified snapshot, without sending the request.
+     */
+    private Response replay(GetRequest request, ResponseSnapshot snapshot) {
+        return client.target(request.getTarget())
+                .request(request.getAcceptedResponse())
+                .property(ResponseSnapshot.REPLAYED_SNAPSHOT, snapshot)
+                .get();
+    }
+
+    private Invocation.Builder requestBuilder(GetRequest request, Deadline deadline) {
+        return requestBuilder(request.getTarget(), request.getQueryParams(), request.getAcceptedResponse(),
+                request.getHeaders(), deadline);
+    }
+
+    private Invocation.Builder requestBuilder(String targetUri, Map<String, String> queryParams,
+                                              String acceptedResponse, Map<String, Object> headers,
+                                              Deadline deadline) {
+        WebTarget target = client.target(targetUri);
+        for (Map.Entry<String, String> queryParam : queryParams.entrySet()) {
+            // WebTarget is immutable, queryParam returns a new one
+            target = target.queryParam(queryParam.getKey(), queryParam.getValue());
+        }
         Invocation.Builder requestBuilder = target
-                .request(request.getAcceptedResponse());
-        request.getHeaders().forEach((k, v) -> requestBuilder.header(k, v));
-        return requestBuilder.get();
+                .request(acceptedResponse);
+        headers.forEach((k, v) -> requestBuilder.header(k, v));
+        if (deadline != null) {
+            // The attempt mustn't outlast the time left until the deadline
+            requestBuilder.property(ClientProperties.CONNECT_TIMEOUT,
+                    deadline.remainingTimeoutMillis(configuredTimeoutMillis(ClientProperties.CONNECT_TIMEOUT)));
+            requestBuilder.property(ClientProperties.READ_TIMEOUT,
+                    deadline.remainingTimeoutMillis(configuredTimeoutMillis(ClientProperties.READ_TIMEOUT)));
+        }
+        return requestBuilder;
+    }
+
+    private int configuredTimeoutMillis(String property) {
+        Object value = client.getConfiguration().getProperty(property);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static <T> T readEntityIfOk(Class<T> clazz, Response response) {
+        if (response.getStatusInfo().equals(Response.Status.OK)) {
+            return response.readEntity(clazz);
+        } else {
+            throw new ResponseNotOkException(response);
+        }
     }
 
     /**
@@ -154,14 +978,70 @@ public class HttpApiClient {
      * @return the Retry instance
      */
     private Retry fetchRetry(String retryName) {
-        Retry result = null;
+        return retryRegistry.retry(effectiveRetryName(retryName));
+    }
+
+    private Deadline fetchDeadline(Duration requestTimeout, String retryName) {
+        Duration timeout = requestTimeout != null ? requestTimeout : timeouts.get(effectiveRetryName(retryName));
+        return timeout == null ? null : Deadline.after(timeout);
+    }
+
+    private CallMetrics fetchCallMetrics(String host, String retryName) {
+        return metrics.forCall(effectiveRetryName(retryName), host);
+    }
+
+    private RetryBudget fetchRetryBudget(String retryName) {
+        return retryBudgets.isEmpty() ? null : retryBudgets.get(effectiveRetryName(retryName));
+    }
+
+    private HedgedInvoker fetchHedgedInvoker(String retryName) {
+        return hedgedInvokers.isEmpty() ? null : hedgedInvokers.get(effectiveRetryName(retryName));
+    }
+
+    /**
+     * Returns the condition for which a response is handed to the caller rather than retried.
+     */
+    private Predicate<Response> isGoodResponse(String retryName) {
+        Predicate<Response> retryOnResult = retryRegistry.retry(effectiveRetryName(retryName))
+                .getRetryConfig().getResultPredicate();
+        return retryOnResult == null ? response -> true : retryOnResult.negate();
+    }
+
+    private LoadBalancer fetchLoadBalancer(String target) {
+        if (!LoadBalancer.isServiceTarget(target)) {
+            return null;
+        }
+        String serviceName = TargetHosts.hostOf(target);
+        LoadBalancer result = serviceName == null ? null : loadBalancers.get(serviceName);
+        Preconditions.checkArgument(result != null, "unknown service: %s", target);
+        return result;
+    }
+
+    private AdaptiveConcurrencyLimiter fetchConcurrencyLimiter(String host) {
+        ConcurrencyLimitConfig config = this.concurrencyLimitConfig;
+        if (config == null || host == null) {
+            return null;
+        }
+        AdaptiveConcurrencyLimiter result = concurrencyLimiters.get(host);
+        if (result == null) {
+            result = concurrencyLimiters.computeIfAbsent(host, h -> new AdaptiveConcurrencyLimiter(h, config));
+        }
+        return result;
+    }
+
+    private CircuitBreaker fetchCircuitBreaker(String host) {
+        CircuitBreakerRegistry registry = this.circuitBreakerRegistry;
+        if (registry == null) {
+            return null;
+        }
+        return host == null ? null : registry.circuitBreaker(host);
+    }
+
+    private static String effectiveRetryName(String retryName) {
         if (retryName == null || retryName.trim().equals("")) {
-            result = retryRegistry.retry(DEFAULT_RETRY_NAME);
+            return DEFAULT_RETRY_NAME;
         } else {
-            result = retryRegistry.retry(retryName);
+            return retryName;
         }
-        result.getEventPublisher().onRetry(event ->
-                log.info("Retrying. Num of retry attempts = {}", event.getNumberOfRetryAttempts()));
-        return result;
     }
 }
@@ -0,0 +1,222 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+
+import javax.ws.rs.ProcessingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A Jersey {@link Connector} sending requests using the JDK's {@link HttpClient}, which multiplexes
+ * concurrent requests to a host over one HTTP/2 connection and sends asynchronous requests without
+ * holding a thread while waiting for the response.
+ *
+ * Request entities are streamed as they are written, see {@link StreamedEntity}, except for
+ * {@code byte[]} and {@code String} entities, which are in memory already and are sent with their
+ * length. Failures to connect or to exchange the request are thrown as {@link ProcessingException}s
+ * caused by the {@link IOException}, like the default connector does, so retry predicates see the
+ * same exceptions whichever connector is used.
+ */
+@Slf4j
+class JdkHttpConnector implements Connector {
+
+    /**
+     * The headers that the {@link HttpClient} sets itself or, on some JDK versions, refuses to be given
+     * (JDK 11 also rejects {@code Date}, {@code From}, {@code Origin}, {@code Referer}, {@code Via} and
+     * {@code Warning}).
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.add("Connection");
+        RESTRICTED_HEADERS.add("Content-Length");
+        RESTRICTED_HEADERS.add("Date");
+        RESTRICTED_HEADERS.add("Expect");
+        RESTRICTED_HEADERS.add("From");
+        RESTRICTED_HEADERS.add("Host");
+        RESTRICTED_HEADERS.add("Origin");
+        RESTRICTED_HEADERS.add("Referer");
+        RESTRICTED_HEADERS.add("Upgrade");
+        RESTRICTED_HEADERS.add("Via");
+        RESTRICTED_HEADERS.add("Warning");
+    }
+
+    private final HttpClient httpClient;
+    private final int defaultReadTimeoutMillis;
+    /**
+     * Write the streamed entities, each blocking while the HttpClient sends what it wrote.
+     */
+    private final ExecutorService entityWriters = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("http-api-client-entity-writer-%d")
+            .setDaemon(true)
+            .build());
+
+    JdkHttpConnector(HttpClient httpClient, int defaultReadTimeoutMillis) {
+        this.httpClient = httpClient;
+        this.defaultReadTimeoutMillis = defaultReadTimeoutMillis;
+    }
+
+    @Override
+    public ClientResponse apply(ClientRequest request) {
+        StreamedEntity entity = isStreamed(request) ? StreamedEntity.write(request, entityWriters) : null;
+        try {
+            HttpRequest httpRequest = entity == null
+                    ? toBufferedHttpRequest(request)
+                    : toHttpRequest(request, HttpRequest.BodyPublishers.fromPublisher(entity),
+                            entity.getHeaders().get());
+            return toClientResponse(request, httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (IOException e) {
+            abandon(entity, e);
+            throw new ProcessingException(e);
+        } catch (RuntimeException e) {
+            abandon(entity, e);
+            throw e;
+        } catch (ExecutionException e) {
+            abandon(entity, e.getCause());
+            throw toProcessingException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(entity, e);
+            throw new ProcessingException(e);
+        }
+    }
+
+    @Override
+    public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+        StreamedEntity entity;
+        CompletableFuture<HttpRequest> httpRequest;
+        try {
+            entity = isStreamed(request) ? StreamedEntity.write(request, entityWriters) : null;
+            httpRequest = entity == null
+                    ? CompletableFuture.completedFuture(toBufferedHttpRequest(request))
+                    : entity.getHeaders().thenApply(headers ->
+                            toHttpRequest(request, HttpRequest.BodyPublishers.fromPublisher(entity), headers));
+        } catch (RuntimeException e) {
+            callback.failure(e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return httpRequest
+                .thenCompose(r -> httpClient.sendAsync(r, HttpResponse.BodyHandlers.ofInputStream()))
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        abandon(entity, throwable);
+                        callback.failure(toProcessingException(throwable));
+                        return;
+                    }
+                    try {
+                        callback.response(toClientResponse(request, response));
+                    } catch (RuntimeException e) {
+                        callback.failure(e);
+                    }
+                });
+    }
+
+    @Override
+    public String getName() {
+        return "JDK HttpClient " + httpClient.version();
+    }
+
+    @Override
+    public void close() {
+        // The HttpClient releases its connections once it's no longer referenced
+        entityWriters.shutdownNow();
+    }
+
+    /**
+     * Checks whether the entity of the specified request is to be streamed rather than buffered.
+     */
+    private static boolean isStreamed(ClientRequest request) {
+        return request.hasEntity() && !(request.getEntity() instanceof byte[] || request.getEntity() instanceof String);
+    }
+
+    private static void abandon(StreamedEntity entity, Throwable cause) {
+        if (entity != null) {
+            entity.abandon(cause);
+        }
+    }
+
+    private HttpRequest toBufferedHttpRequest(ClientRequest request) {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+        if (request.hasEntity()) {
+            ByteArrayOutputStream entity = new ByteArrayOutputStream();
+            request.setStreamProvider(contentLength -> entity);
+            try {
+                request.writeEntity();
+            } catch (IOException e) {
+                throw new ProcessingException(e);
+            }
+            body = HttpRequest.BodyPublishers.ofByteArray(entity.toByteArray());
+        }
+        // Read after the entity is written, as writing it may add headers
+        return toHttpRequest(request, body, request.getStringHeaders());
+    }
+
+    private HttpRequest toHttpRequest(ClientRequest request, HttpRequest.BodyPublisher body,
+                                      Map<String, List<String>> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri())
+                .method(request.getMethod(), body);
+        headers.forEach((name, values) -> {
+            if (RESTRICTED_HEADERS.contains(name)) {
+                log.debug("Not sending header {}, which the HttpClient doesn't allow", name);
+                return;
+            }
+            try {
+                values.forEach(value -> builder.header(name, value));
+            } catch (IllegalArgumentException e) {
+                // Restricted by a JDK version not accounted for above, or an invalid value
+                log.warn("Not sending header {}: {}", name, e.getMessage());
+            }
+        });
+        // The HttpClient only has a connect timeout per client, so the read timeout of a request, which
+        // the deadline may have cut down, bounds the whole exchange up to the response headers.
+        int readTimeoutMillis = request.resolveProperty(ClientProperties.READ_TIMEOUT, defaultReadTimeoutMillis);
+        if (readTimeoutMillis > 0) {
+            builder.timeout(Duration.ofMillis(readTimeoutMillis));
+        }
+        return builder.build();
+    }
+
+    private static ClientResponse toClientResponse(ClientRequest request, HttpResponse<InputStream> response) {
+        ClientResponse result = new ClientResponse(Statuses.from(response.statusCode()), request);
+        response.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":")) {
+                result.headers(name, values);
+            }
+        });
+        result.setEntityStream(response.body());
+        result.setResolvedRequestUri(response.uri());
+        log.trace("Response for uri {} received over {}", response.uri(), response.version());
+        return result;
+    }
+
+    private static ProcessingException toProcessingException(Throwable throwable) {
+        Throwable cause = throwable;
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            cause = throwable.getCause();
+        }
+        return cause instanceof ProcessingException ? (ProcessingException) cause : new ProcessingException(cause);
+    }
+}
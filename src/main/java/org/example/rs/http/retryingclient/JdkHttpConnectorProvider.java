@@ -0,0 +1,39 @@
+package org.example.rs.http.retryingclient;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Configuration;
+import java.net.http.HttpClient;
+
+/**
+ * Provides a {@link JdkHttpConnector} with its own {@link HttpClient}, and so its own connections,
+ * to every {@link Client} it's configured for.
+ */
+class JdkHttpConnectorProvider implements ConnectorProvider {
+    private final Http2TransportConfig config;
+
+    JdkHttpConnectorProvider(Http2TransportConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public Connector getConnector(Client client, Configuration runtimeConfig) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(config.getVersion())
+                .connectTimeout(config.getConnectTimeout())
+                .followRedirects(ClientProperties.getValue(runtimeConfig.getProperties(),
+                        ClientProperties.FOLLOW_REDIRECTS, Boolean.TRUE)
+                        ? HttpClient.Redirect.NORMAL
+                        : HttpClient.Redirect.NEVER);
+        if (client.getSslContext() != null) {
+            builder.sslContext(client.getSslContext());
+        }
+        if (config.getExecutor() != null) {
+            builder.executor(config.getExecutor());
+        }
+        return new JdkHttpConnector(builder.build(), (int) config.getReadTimeout().toMillis());
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.rs.http.retryingclient;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.NonNull;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the elements of a top-level JSON array one at a time, so that only the element being read
+ * is held in memory rather than the whole array.
+ *
+ * @param <T> the type of the elements
+ */
+class JsonArraySpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final JsonParser parser;
+    private final ObjectReader reader;
+
+    private JsonArraySpliterator(JsonParser parser, ObjectReader reader) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.parser = parser;
+        this.reader = reader;
+    }
+
+    /**
+     * Returns a sequential stream of the elements of the JSON array in the entity of the specified
+     * response. Closing the stream closes the response.
+     *
+     * @param clazz the type of the elements
+     * @param response the response, whose entity must be a JSON array
+     * @param <T> the type of the elements
+     * @return the stream of elements
+     * @throws ProcessingException if the entity is not a JSON array
+     */
+    static <T> Stream<T> stream(@NonNull Class<T> clazz, @NonNull Response response) {
+        try {
+            InputStream entity = response.readEntity(InputStream.class);
+            JsonParser parser = OBJECT_MAPPER.getFactory().createParser(entity);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ProcessingException("Response entity is not a JSON array");
+            }
+            Spliterator<T> elements = new JsonArraySpliterator<>(parser, OBJECT_MAPPER.readerFor(clazz));
+            return StreamSupport.stream(elements, false)
+                    .onClose(() -> {
+                        try {
+                            parser.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            response.close();
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new ProcessingException(e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return false;
+            }
+            action.accept(reader.readValue(parser));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
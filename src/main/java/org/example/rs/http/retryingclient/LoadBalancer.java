@@ -0,0 +1,232 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Spreads the attempts of the requests to a logical service over its endpoints.
+ *
+ * Requests address the service with targets of the form {@code service://<serviceName>/<path>},
+ * which each attempt resolves against the endpoint it's sent to. Endpoints are picked using the
+ * power of two choices: of two random endpoints, the one with fewer outstanding attempts wins.
+ * A retry prefers an endpoint other than the one of the previous attempt. Endpoints that fail
+ * repeatedly are ejected for a while, then reinstated.
+ */
+@Slf4j
+public class LoadBalancer {
+    static final String SERVICE_SCHEME = "service";
+
+    @Getter
+    private final String serviceName;
+    private final List<Endpoint> endpoints;
+    private final LoadBalancerConfig config;
+    private final long ejectionNanos;
+    private final int maxEjected;
+
+    LoadBalancer(@NonNull String serviceName, @NonNull List<String> endpointUris, @NonNull LoadBalancerConfig config) {
+        Preconditions.checkArgument(!endpointUris.isEmpty(), "no endpoints for service %s", serviceName);
+        Preconditions.checkArgument(config.getFailuresToEject() >= 1, "invalid value: %s", config.getFailuresToEject());
+        List<Endpoint> result = new ArrayList<>();
+        for (String uri : endpointUris) {
+            result.add(new Endpoint(uri));
+        }
+        this.serviceName = serviceName;
+        this.endpoints = Collections.unmodifiableList(result);
+        this.config = config;
+        this.ejectionNanos = config.getEjectionTime().toNanos();
+        this.maxEjected = (int) (endpointUris.size() * config.getMaxEjectedRatio());
+    }
+
+    /**
+     * Checks whether the specified target addresses a logical service.
+     */
+    static boolean isServiceTarget(String target) {
+        return target.regionMatches(true, 0, SERVICE_SCHEME + "://", 0, SERVICE_SCHEME.length() + 3);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Returns the supplier of the attempts of the specified request, each sent to the endpoint picked for it.
+     *
+     * @param request the request, whose target addresses this service
+     * @param invocation invokes the request resolved against an endpoint
+     * @return the supplier of the attempts
+     */
+    Supplier<Response> attempts(GetRequest request, Function<GetRequest, Response> invocation) {
+        AtomicReference<Endpoint> previous = new AtomicReference<>();
+        return () -> {
+            Endpoint endpoint = choose(previous.get());
+            previous.set(endpoint);
+            GetRequest resolved = request.toBuilder().target(endpoint.resolve(request.getTarget())).build();
+            endpoint.outstanding.incrementAndGet();
+            try {
+                Response result = invocation.apply(resolved);
+                onOutcome(endpoint, isFailure(result));
+                return result;
+            } catch (RuntimeException e) {
+                onOutcome(endpoint, true);
+                throw e;
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #attempts(GetRequest, Function)}.
+     */
+    Supplier<CompletionStage<Response>> asyncAttempts(GetRequest request,
+                                                      Function<GetRequest, CompletionStage<Response>> invocation) {
+        AtomicReference<Endpoint> previous = new AtomicReference<>();
+        return () -> {
+            Endpoint endpoint = choose(previous.get());
+            previous.set(endpoint);
+            GetRequest resolved = request.toBuilder().target(endpoint.resolve(request.getTarget())).build();
+            endpoint.outstanding.incrementAndGet();
+            CompletionStage<Response> stage;
+            try {
+                stage = invocation.apply(resolved);
+            } catch (RuntimeException e) {
+                endpoint.outstanding.decrementAndGet();
+                onOutcome(endpoint, true);
+                throw e;
+            }
+            return stage.whenComplete((result, throwable) -> {
+                endpoint.outstanding.decrementAndGet();
+                onOutcome(endpoint, throwable != null || isFailure(result));
+            });
+        };
+    }
+
+    private Endpoint choose(Endpoint previous) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now) && endpoint != previous) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // Every other endpoint is ejected; better any endpoint than none
+            candidates.addAll(endpoints);
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = candidates.get(first);
+        Endpoint b = candidates.get(second);
+        return a.outstanding.get() <= b.outstanding.get() ? a : b;
+    }
+
+    private void onOutcome(Endpoint endpoint, boolean failed) {
+        if (!failed) {
+            endpoint.consecutiveFailures.set(0);
+            return;
+        }
+        if (endpoint.consecutiveFailures.incrementAndGet() < config.getFailuresToEject()) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (endpoint.isEjected(now) || countEjected(now) >= maxEjected) {
+                return;
+            }
+            endpoint.ejectedUntilNanos = now + ejectionNanos;
+            endpoint.consecutiveFailures.set(0);
+        }
+        log.warn("Ejected endpoint {} of service {} for {}", endpoint.uri, serviceName, config.getEjectionTime());
+    }
+
+    private int countEjected(long now) {
+        int result = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isEjected(now)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isFailure(Response response) {
+        return response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()
+                || response.getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR;
+    }
+
+    /**
+     * An endpoint of a logical service.
+     */
+    public static class Endpoint {
+        @Getter
+        private final String uri;
+        private final String base;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ejectedUntilNanos;
+
+        Endpoint(String uri) {
+            URI parsed = URI.create(uri);
+            Preconditions.checkArgument(parsed.getScheme() != null && parsed.getHost() != null,
+                    "invalid endpoint: %s", uri);
+            this.uri = uri;
+            this.base = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+        }
+
+        /**
+         * Returns the number of attempts sent to this endpoint that haven't completed yet.
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * Checks whether this endpoint is currently left out because it failed repeatedly.
+         */
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now) {
+            long until = ejectedUntilNanos;
+            return until != 0 && until - now > 0;
+        }
+
+        /**
+         * Resolves the specified {@code service://} target against this endpoint.
+         */
+        String resolve(String serviceTarget) {
+            for (int i = SERVICE_SCHEME.length() + 3; i < serviceTarget.length(); i++) {
+                char c = serviceTarget.charAt(i);
+                if (c == '/' || c == '?' || c == '#') {
+                    return base + serviceTarget.substring(i);
+                }
+            }
+            return base;
+        }
+    }
+}
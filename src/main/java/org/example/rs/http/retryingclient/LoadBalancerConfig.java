@@ -0,0 +1,39 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the passive ejection of failing endpoints of a logical service.
+ */
+@Builder
+@ToString
+public class LoadBalancerConfig {
+
+    /**
+     * The number of consecutive failed attempts, i.e. exceptions, 429 and 5XX responses, after which
+     * an endpoint is ejected.
+     */
+    @Builder.Default
+    @Getter
+    private int failuresToEject = 3;
+
+    /**
+     * How long an ejected endpoint is left out before it is reinstated.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration ejectionTime = Duration.ofSeconds(30);
+
+    /**
+     * The maximum fraction of the endpoints that can be ejected at a time.
+     */
+    @Builder.Default
+    @Getter
+    private double maxEjectedRatio = 0.5;
+}
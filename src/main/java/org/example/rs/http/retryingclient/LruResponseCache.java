@@ -0,0 +1,46 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A {@link ResponseCache} bounded by the total size of the cached responses. The least recently
+ * used responses are evicted first.
+ */
+public class LruResponseCache implements ResponseCache {
+    private final Cache<String, CachedResponse> cache;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxWeightBytes the approximate maximum number of bytes taken up by the cached
+     *                       entities and headers
+     */
+    public LruResponseCache(long maxWeightBytes) {
+        Preconditions.checkArgument(maxWeightBytes > 0, "non-positive value: %s", maxWeightBytes);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String key, CachedResponse value) -> key.length() + value.getWeight())
+                .build();
+    }
+
+    @Override
+    public CachedResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(String key, CachedResponse response) {
+        cache.put(key, response);
+    }
+
+    @Override
+    public void remove(String key) {
+        cache.invalidate(key);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.NonNull;
+
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Tells {@link HttpApiClient#getPagesWithRetries} how to request the page following the current one.
+ *
+ * @param <T> the type the pages are unmarshalled into
+ */
+@FunctionalInterface
+public interface NextPageResolver<T> {
+
+    /**
+     * Returns the request for the page following the current one.
+     *
+     * @param current the request of the current page
+     * @param response the response of the current page, whose entity has been read
+     * @param page the current page
+     * @return the request for the next page, or null if the current page is the last one
+     */
+    GetRequest next(GetRequest current, Response response, T page);
+
+    /**
+     * Follows the {@code Link} header with relation type {@code next}, which can be relative to the
+     * current page. The link is requested as is: the query parameters of the current request aren't
+     * added to it, as the server is expected to carry over those it needs. The last page is the one
+     * without such a link.
+     *
+     * @param <T> the type the pages are unmarshalled into
+     * @return the resolver
+     */
+    static <T> NextPageResolver<T> linkHeader() {
+        return (current, response, page) -> {
+            Link next = response.getLink("next");
+            if (next == null) {
+                return null;
+            }
+            URI target = URI.create(current.getTarget()).resolve(next.getUri());
+            return current.toBuilder()
+                    .target(target.toString())
+                    .queryParams(new HashMap<>())
+                    .binding(null)
+                    .build();
+        };
+    }
+
+    /**
+     * Requests the next page by setting the specified query parameter to the cursor found in the
+     * current page. The last page is the one without a cursor.
+     *
+     * @param queryParam the name of the query parameter carrying the cursor
+     * @param cursorOf returns the cursor of a page, or null or an empty string if it's the last one
+     * @param <T> the type the pages are unmarshalled into
+     * @return the resolver
+     */
+    static <T> NextPageResolver<T> cursor(@NonNull String queryParam, @NonNull Function<? super T, String> cursorOf) {
+        return (current, response, page) -> {
+            String cursor = cursorOf.apply(page);
+            if (cursor == null || cursor.isEmpty()) {
+                return null;
+            }
+            // The cursor goes with the other query parameters, and replaces any in the target
+            URI target = UriBuilder.fromUri(current.getTarget()).replaceQueryParam(queryParam).build();
+            Map<String, String> queryParams = new LinkedHashMap<>(current.getQueryParams());
+            queryParams.put(queryParam, cursor);
+            return current.toBuilder()
+                    .target(target.toString())
+                    .queryParams(queryParams)
+                    .binding(null)
+                    .build();
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes the pages of a paginated API, fetching them one after the other.
+ *
+ * Pages are fetched ahead of the subscriber's demand, so the next page is usually ready by the time
+ * the subscriber is done with the current one, but never more than {@code prefetch} pages are held
+ * at a time. Each subscriber walks the pages from the first one.
+ *
+ * @param <T> the type the pages are unmarshalled into
+ */
+@Slf4j
+class PagePublisher<T> implements Flow.Publisher<T> {
+    private final GetRequest firstPage;
+    private final Function<GetRequest, CompletionStage<Response>> fetch;
+    private final Function<Response, T> reader;
+    private final NextPageResolver<T> nextPage;
+    private final int prefetch;
+
+    PagePublisher(@NonNull GetRequest firstPage, @NonNull Function<GetRequest, CompletionStage<Response>> fetch,
+                  @NonNull Function<Response, T> reader, @NonNull NextPageResolver<T> nextPage, int prefetch) {
+        Preconditions.checkArgument(prefetch >= 1, "invalid prefetch: %s", prefetch);
+        this.firstPage = firstPage;
+        this.fetch = fetch;
+        this.reader = reader;
+        this.nextPage = nextPage;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * The pages fetched for a subscriber. Every signal to the subscriber is sent from {@link #drain()},
+     * which only one thread runs at a time.
+     */
+    private class PageSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Queue<T> pages = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger drainers = new AtomicInteger();
+        private volatile GetRequest nextRequest = firstPage;
+        private volatile boolean fetching;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        private boolean terminated;
+
+        PageSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("non-positive request: " + n);
+                nextRequest = null;
+            } else {
+                requested.accumulateAndGet(n,
+                        (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        void drain() {
+            if (drainers.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                drainOnce();
+                missed = drainers.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (terminated) {
+                return;
+            }
+            if (cancelled) {
+                terminated = true;
+                pages.clear();
+                return;
+            }
+            while (requested.get() > 0 && !pages.isEmpty()) {
+                subscriber.onNext(pages.poll());
+                requested.decrementAndGet();
+                if (cancelled) {
+                    terminated = true;
+                    pages.clear();
+                    return;
+                }
+            }
+            if (fetching) {
+                return;
+            }
+            if (error != null) {
+                terminated = true;
+                pages.clear();
+                subscriber.onError(error);
+            } else if (nextRequest == null) {
+                if (pages.isEmpty()) {
+                    terminated = true;
+                    subscriber.onComplete();
+                }
+            } else if (pages.size() < prefetch) {
+                fetching = true;
+                fetchPage(nextRequest);
+            }
+        }
+
+        private void fetchPage(GetRequest request) {
+            CompletionStage<Response> stage;
+            try {
+                stage = fetch.apply(request);
+            } catch (RuntimeException e) {
+                onFetched(null, e);
+                return;
+            }
+            stage.thenApply(response -> {
+                T page = reader.apply(response);
+                GetRequest next = nextPage.next(request, response, page);
+                pages.add(page);
+                return next;
+            }).whenComplete(this::onFetched);
+        }
+
+        private void onFetched(GetRequest next, Throwable throwable) {
+            if (throwable != null) {
+                error = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+                log.debug("Failed fetching page: {}", error.toString());
+            }
+            nextRequest = next;
+            fetching = false;
+            drain();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Settings of the connection pool used by a client created using
+ * {@link ClientHelper#pooledClient(PooledTransportConfig)}.
+ */
+@Builder
+@ToString
+public class PooledTransportConfig {
+
+    /**
+     * The maximum number of connections in the pool, across all hosts.
+     */
+    @Builder.Default
+    @Getter
+    private int maxTotalConnections = 200;
+
+    /**
+     * The maximum number of connections in the pool for a single host (route).
+     */
+    @Builder.Default
+    @Getter
+    private int maxConnectionsPerHost = 20;
+
+    /**
+     * How long a connection may be kept alive when idle. If the server sends a shorter
+     * {@code Keep-Alive} timeout, that is used instead.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    /**
+     * Connections that have been idle for longer than this are closed by the evictor.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration maxIdleTime = Duration.ofSeconds(60);
+
+    /**
+     * How often expired and idle connections are evicted from the pool.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration evictionInterval = Duration.ofSeconds(10);
+
+    /**
+     * How long to wait for a connection to be leased from the pool when the pool is exhausted.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration connectTimeout = Duration.ofMillis(ClientHelper.DEFAULT_CONNECT_TIMEOUT);
+
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration readTimeout = Duration.ofMillis(ClientHelper.DEFAULT_READ_TIMEOUT);
+
+    /**
+     * If set, host names are resolved through a {@link DnsCache} with these settings, rather than
+     * every time a connection is opened.
+     */
+    @Getter
+    private DnsCacheConfig dnsCache;
+}
@@ -0,0 +1,139 @@
+package org.example.rs.http.retryingclient;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * The entity of a {@link WriteRequest}, in a form that can be sent again on every attempt.
+ *
+ * Objects and strings are serialized once, when the body is created, and the resulting bytes are
+ * sent on every attempt. {@link ByteBuffer} and file bodies are streamed from their source on every
+ * attempt, so that large bodies are never copied onto the heap.
+ */
+@ToString(onlyExplicitlyIncluded = true)
+public class RequestBody {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Getter
+    @ToString.Include
+    private final String mediaType;
+
+    /**
+     * Whether the body is streamed from its source rather than sent from memory.
+     */
+    @Getter
+    private final boolean streamed;
+
+    private final Supplier<Object> entitySupp;
+
+    private RequestBody(String mediaType, boolean streamed, Supplier<Object> entitySupp) {
+        this.mediaType = mediaType;
+        this.streamed = streamed;
+        this.entitySupp = entitySupp;
+    }
+
+    /**
+     * Creates a body sending the specified bytes, which mustn't be modified afterwards.
+     */
+    public static RequestBody of(@NonNull byte[] content, @NonNull String mediaType) {
+        return new RequestBody(mediaType, false, () -> content);
+    }
+
+    /**
+     * Creates a body sending the specified string encoded in UTF-8.
+     */
+    public static RequestBody of(@NonNull String content, @NonNull String mediaType) {
+        return of(content.getBytes(StandardCharsets.UTF_8), mediaType);
+    }
+
+    /**
+     * Creates a body sending the specified value serialized into JSON.
+     */
+    public static RequestBody json(@NonNull Object value) {
+        try {
+            return of(OBJECT_MAPPER.writeValueAsBytes(value), MediaType.APPLICATION_JSON);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed serializing " + value.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Creates a body streamed from the remaining content of the specified buffer, which mustn't be
+     * modified afterwards. The position of the buffer doesn't change.
+     */
+    public static RequestBody of(@NonNull ByteBuffer content, @NonNull String mediaType) {
+        ByteBuffer source = content.asReadOnlyBuffer();
+        return new RequestBody(mediaType, true,
+                () -> (StreamingOutput) output -> new ByteBufferInputStream(source.duplicate()).transferTo(output));
+    }
+
+    /**
+     * Creates a body streamed from the specified file, which is read again on every attempt.
+     *
+     * The file is only opened once the entity is written, and closed right after, so an attempt that
+     * fails before its entity is written, e.g. because the connection is refused, leaves no file open.
+     */
+    public static RequestBody of(@NonNull Path file, @NonNull String mediaType) {
+        Preconditions.checkArgument(Files.isReadable(file), "unreadable file: %s", file);
+        return new RequestBody(mediaType, true, () -> (StreamingOutput) output -> {
+            try (InputStream input = Files.newInputStream(file)) {
+                input.transferTo(output);
+            }
+        });
+    }
+
+    /**
+     * Returns the entity to send with an attempt.
+     */
+    Entity<?> toEntity() {
+        return Entity.entity(entitySupp.get(), mediaType);
+    }
+
+    /**
+     * Reads a {@link ByteBuffer}, which can be a direct one, without copying it.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical requests share a single invocation.
+ *
+ * The first caller of a request (the leader) invokes it. Callers that make an identical request
+ * while the leader's invocation is in flight wait for it and receive their own {@link Response}
+ * built from the leader's response, rather than invoking the request themselves. The leader only
+ * buffers the entity of its response if someone waits for it, so that a response nobody shares can
+ * still be streamed.
+ *
+ * Requests are only identical if they have the same timeout, and a waiter never waits past its own
+ * {@link Deadline}.
+ */
+@Slf4j
+class RequestCoalescer {
+    private final Map<Key, Flight> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Invokes the specified request, unless an identical one is in flight.
+     *
+     * @param request the request
+     * @param retryName the name of the retry configuration the request is invoked with
+     * @param deadline the deadline of the request, if any
+     * @param invocation invokes the request
+     * @param replay builds the {@link Response} handed to a waiter from the leader's response
+     * @return the response
+     * @throws DeadlineExceededException if the deadline passes while waiting for an identical request
+     */
+    Response execute(@NonNull GetRequest request, String retryName, Deadline deadline,
+                     @NonNull Supplier<Response> invocation, @NonNull Function<ResponseSnapshot, Response> replay) {
+        Key key = Key.of(request, retryName, deadline);
+        Flight mine = new Flight();
+        // Joins the flight atomically with the leader's removing it, so the leader knows whether anyone waits
+        Flight flight = inFlight.compute(key, (k, leaders) -> {
+            if (leaders == null) {
+                return mine;
+            }
+            leaders.waiters++;
+            return leaders;
+        });
+        if (flight != mine) {
+            log.debug("Waiting for identical in-flight request {}", request);
+            return replay.apply(await(flight, deadline));
+        }
+
+        Response result;
+        try {
+            result = invocation.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.snapshot.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, mine);
+        if (mine.waiters > 0) {
+            try {
+                mine.snapshot.complete(ResponseSnapshot.of(result));
+            } catch (RuntimeException e) {
+                mine.snapshot.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    private static ResponseSnapshot await(Flight flight, Deadline deadline) {
+        try {
+            return deadline == null
+                    ? flight.snapshot.get()
+                    : flight.snapshot.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw deadline.exceeded(null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for an identical request");
+        }
+    }
+
+    /**
+     * The invocation of a leader, and the number of callers waiting for it.
+     */
+    private static final class Flight {
+        private final CompletableFuture<ResponseSnapshot> snapshot = new CompletableFuture<>();
+        // Only updated while the flight is in the map, atomically with looking it up
+        private volatile int waiters;
+    }
+
+    /**
+     * Identifies identical requests. Header and query parameter order doesn't matter.
+     */
+    @EqualsAndHashCode
+    @ToString
+    private static final class Key {
+        private final String retryName;
+        private final String target;
+        private final String acceptedResponse;
+        private final Map<String, String> headers;
+        private final Map<String, String> queryParams;
+        private final Duration timeout;
+
+        private Key(String retryName, String target, String acceptedResponse, Map<String, String> headers,
+                    Map<String, String> queryParams, Duration timeout) {
+            this.retryName = retryName;
+            this.target = target;
+            this.acceptedResponse = acceptedResponse;
+            this.headers = headers;
+            this.queryParams = queryParams;
+            this.timeout = timeout;
+        }
+
+        static Key of(GetRequest request, String retryName, Deadline deadline) {
+            Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            request.getHeaders().forEach((k, v) -> headers.put(k, String.valueOf(v)));
+            return new Key(retryName,
+                    URI.create(request.getTarget()).normalize().toString(),
+                    request.getAcceptedResponse() == null ? null : request.getAcceptedResponse().toLowerCase(),
+                    headers,
+                    new TreeMap<>(request.getQueryParams()),
+                    deadline == null ? null : deadline.getTimeout());
+        }
+    }
+}
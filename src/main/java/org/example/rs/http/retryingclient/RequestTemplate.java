@@ -0,0 +1,190 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import org.glassfish.jersey.uri.UriComponent;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GET request whose target is a URI template, e.g. {@code http://api.example.com/users/{id}/orders},
+ * with fixed headers and query parameters, for the endpoints that are called often with different
+ * values.
+ *
+ * The template is parsed once, when it's built, and {@link #bind(Object...) binding} it to the values
+ * of its variables only fills them in. The host of a bound request, which {@link HttpApiClient} keys
+ * its circuit breakers, concurrency limits and metrics by, is the template's, rather than parsed from
+ * the target of each request, so templates are meant to be built once and kept, e.g. as constants.
+ *
+ * Variables may only appear in the path of the template. Query parameters go in {@link #queryParams}
+ * or are passed to {@link #bindWithQueryParams(Map, Object...)}.
+ */
+@ToString(of = {"uriTemplate", "acceptedResponse", "headers", "queryParams", "timeout"})
+public class RequestTemplate {
+    @Getter
+    private final String uriTemplate;
+
+    @Getter
+    private final String acceptedResponse;
+
+    @Getter
+    private final Map<String, Object> headers;
+
+    @Getter
+    private final Map<String, String> queryParams;
+
+    /**
+     * The total time allowed for each request bound from the template, as in {@link GetRequest#getTimeout()}.
+     */
+    @Getter
+    private final Duration timeout;
+
+    /**
+     * The literal parts of the template around its variables: one more than there are variables.
+     */
+    private final String[] literals;
+
+    private final String[] variables;
+
+    /**
+     * The host of the targets made of the template, or null if they don't have one.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final String host;
+
+    @Builder
+    private RequestTemplate(@NonNull String uriTemplate, String acceptedResponse, Map<String, Object> headers,
+                            Map<String, String> queryParams, Duration timeout) {
+        Preconditions.checkArgument(uriTemplate.indexOf('?') < 0 && uriTemplate.indexOf('#') < 0,
+                "query parameters of a template go in its queryParams: %s", uriTemplate);
+        this.uriTemplate = uriTemplate;
+        this.acceptedResponse = acceptedResponse != null ? acceptedResponse : "application/json";
+        this.headers = headers != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(headers))
+                : Collections.emptyMap();
+        this.queryParams = queryParams != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(queryParams))
+                : Collections.emptyMap();
+        this.timeout = timeout;
+
+        List<String> literalList = new ArrayList<>();
+        List<String> variableList = new ArrayList<>();
+        int pathStart = uriTemplate.indexOf('/', uriTemplate.indexOf("//") + 2);
+        int literalStart = 0;
+        int open = uriTemplate.indexOf('{');
+        while (open >= 0) {
+            int close = uriTemplate.indexOf('}', open);
+            Preconditions.checkArgument(close > open + 1, "invalid variable in template: %s", uriTemplate);
+            Preconditions.checkArgument(pathStart >= 0 && open > pathStart,
+                    "variables are only allowed in the path of a template: %s", uriTemplate);
+            String variable = uriTemplate.substring(open + 1, close);
+            Preconditions.checkArgument(variable.indexOf(':') < 0 && variable.indexOf('{') < 0,
+                    "invalid variable in template: %s", uriTemplate);
+            Preconditions.checkArgument(!variableList.contains(variable), "duplicate variable %s in template: %s",
+                    variable, uriTemplate);
+            literalList.add(uriTemplate.substring(literalStart, open));
+            variableList.add(variable);
+            literalStart = close + 1;
+            open = uriTemplate.indexOf('{', literalStart);
+        }
+        literalList.add(uriTemplate.substring(literalStart));
+        this.literals = literalList.toArray(new String[0]);
+        this.variables = variableList.toArray(new String[0]);
+
+        // Fails now rather than on every request if the template doesn't make a valid URI
+        this.host = URI.create(String.join("x", literals)).getHost();
+    }
+
+    /**
+     * Returns the names of the variables of the template, in the order they appear in.
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * Returns a request to the target that the specified values make of the template, carrying its
+     * headers and query parameters.
+     *
+     * @param values the values of the variables, in the order they appear in; each is encoded as a
+     *               path segment
+     * @return the request
+     */
+    public GetRequest bind(Object... values) {
+        return bindWithQueryParams(Collections.emptyMap(), values);
+    }
+
+    /**
+     * Does what {@link #bind(Object...)} does, adding the specified query parameters to the fixed ones.
+     *
+     * @param queryParams the query parameters of this request only
+     * @param values the values of the variables, in the order they appear in
+     * @return the request
+     */
+    public GetRequest bindWithQueryParams(@NonNull Map<String, String> queryParams, @NonNull Object... values) {
+        Preconditions.checkArgument(values.length == variables.length, "expected %s values for %s, got %s",
+                variables.length, uriTemplate, values.length);
+        String target;
+        if (values.length == 0) {
+            target = uriTemplate;
+        } else {
+            StringBuilder builder = new StringBuilder(uriTemplate.length() + 16 * values.length);
+            for (int i = 0; i < values.length; i++) {
+                Preconditions.checkArgument(values[i] != null, "null value for %s", variables[i]);
+                builder.append(literals[i])
+                        .append(UriComponent.encode(values[i].toString(), UriComponent.Type.PATH_SEGMENT));
+            }
+            target = builder.append(literals[values.length]).toString();
+        }
+
+        // Unmodifiable, as the requests bound without query parameters of their own share the template's
+        Map<String, String> allQueryParams = this.queryParams;
+        if (!queryParams.isEmpty()) {
+            Map<String, String> merged = new LinkedHashMap<>(this.queryParams);
+            merged.putAll(queryParams);
+            allQueryParams = Collections.unmodifiableMap(merged);
+        }
+        return GetRequest.builder()
+                .target(target)
+                .acceptedResponse(acceptedResponse)
+                .headers(headers)
+                .queryParams(allQueryParams)
+                .timeout(timeout)
+                .binding(new Binding(this, target))
+                .build();
+    }
+
+    /**
+     * The template a request was bound from, which lets {@link HttpApiClient} take the host of the
+     * request from the template rather than parse its target.
+     */
+    static final class Binding {
+        @Getter
+        private final RequestTemplate template;
+        private final String target;
+
+        private Binding(RequestTemplate template, String target) {
+            this.template = template;
+            this.target = target;
+        }
+
+        /**
+         * Checks whether the specified request still has the target it was bound with, rather than one
+         * changed since using {@link GetRequest#toBuilder()}.
+         */
+        boolean isBoundTo(GetRequest request) {
+            return target.equals(request.getTarget());
+        }
+    }
+}
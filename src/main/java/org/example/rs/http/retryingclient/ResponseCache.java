@@ -0,0 +1,33 @@
+package org.example.rs.http.retryingclient;
+
+/**
+ * Stores the responses of GET requests for {@link HttpApiClient}. Implementations must be thread-safe
+ * and are expected to bound their size.
+ *
+ * @see LruResponseCache
+ */
+public interface ResponseCache {
+
+    /**
+     * Returns the cached response with the specified key.
+     *
+     * @param key the cache key
+     * @return the cached response, or null if there is none
+     */
+    CachedResponse get(String key);
+
+    /**
+     * Stores a response, replacing the one with the same key, if any.
+     *
+     * @param key the cache key
+     * @param response the response
+     */
+    void put(String key, CachedResponse response);
+
+    /**
+     * Removes the response with the specified key, if any.
+     *
+     * @param key the cache key
+     */
+    void remove(String key);
+}
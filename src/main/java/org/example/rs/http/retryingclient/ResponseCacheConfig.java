@@ -0,0 +1,42 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the response cache of {@link HttpApiClient}.
+ */
+@Builder
+@ToString
+public class ResponseCacheConfig {
+
+    /**
+     * Where the responses are stored.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private ResponseCache cache = new LruResponseCache(64 * 1024 * 1024);
+
+    /**
+     * Whether to serve a stale cached response when a request fails with an exception or a 5XX
+     * response once the retries are exhausted. Such responses carry a {@code Warning} header. Only
+     * synchronous requests are served stale responses.
+     */
+    @Builder.Default
+    @Getter
+    private boolean serveStaleOnError = false;
+
+    /**
+     * How long past its expiry a cached response may be served when {@link #serveStaleOnError}
+     * is set.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private Duration maxStale = Duration.ofHours(1);
+}
@@ -0,0 +1,54 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helps release the resources held by {@link Response} objects.
+ */
+@Slf4j
+class ResponseHelper {
+
+    /**
+     * Bodies larger than this are not read to the end when discarding a response; the connection
+     * is closed instead of being returned to the pool.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /**
+     * Reads the remainder of the entity of a response that will not be handed to the caller (up to a
+     * limit) and closes the response, so that the underlying connection can be reused.
+     *
+     * @param response the response to discard, may be null
+     */
+    static void drainAndClose(Response response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            if (response.hasEntity()) {
+                try (InputStream entity = response.readEntity(InputStream.class)) {
+                    byte[] buffer = new byte[8192];
+                    int remaining = MAX_DRAIN_BYTES;
+                    int read;
+                    while (remaining > 0 && (read = entity.read(buffer, 0, Math.min(buffer.length, remaining))) != -1) {
+                        remaining -= read;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The entity may have been consumed already or not be readable at all (e.g. outbound
+            // responses); closing the response is all that is left to do then.
+            log.trace("Failed to drain the response entity", e);
+        } finally {
+            try {
+                response.close();
+            } catch (RuntimeException e) {
+                log.trace("Failed to close the response", e);
+            }
+        }
+    }
+}
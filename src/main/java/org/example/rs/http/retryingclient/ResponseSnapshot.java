@@ -0,0 +1,113 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Priority;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The status, headers and buffered entity of a response, which can be replayed any number of times.
+ */
+@Slf4j
+final class ResponseSnapshot {
+    /**
+     * The request property holding the snapshot that the {@link ReplayingFilter} replays.
+     */
+    static final String REPLAYED_SNAPSHOT = ResponseSnapshot.class.getName() + ".replayed";
+
+    @Getter
+    private final Response.StatusType status;
+    @Getter
+    private final MultivaluedMap<String, String> headers;
+    private final byte[] entity;
+
+    private ResponseSnapshot(Response.StatusType status, MultivaluedMap<String, String> headers, byte[] entity) {
+        this.status = status;
+        this.headers = headers;
+        this.entity = entity;
+    }
+
+    /**
+     * Buffers the entity of the specified response, which remains readable by its caller.
+     */
+    static ResponseSnapshot of(Response response) {
+        byte[] entity = null;
+        try {
+            if (response.hasEntity() && response.bufferEntity()) {
+                entity = response.readEntity(byte[].class);
+            }
+        } catch (IllegalStateException e) {
+            // Outbound responses, such as those built by tests, can't be read.
+            log.trace("Failed to buffer the response entity", e);
+        }
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>(response.getStringHeaders());
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            // The entity was read through the client's decoders, so it's no longer encoded
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+        return new ResponseSnapshot(response.getStatusInfo(), headers, entity);
+    }
+
+    /**
+     * Returns a copy of this snapshot with the specified header replaced.
+     */
+    ResponseSnapshot withHeader(String name, String value) {
+        MultivaluedMap<String, String> copy = new MultivaluedHashMap<>(headers);
+        copy.putSingle(name, value);
+        return new ResponseSnapshot(status, copy, entity);
+    }
+
+    /**
+     * Returns the approximate number of bytes this snapshot takes up.
+     */
+    int getWeight() {
+        int result = entity == null ? 0 : entity.length;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            result += header.getKey().length();
+            for (String value : header.getValue()) {
+                result += value.length();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of this response, as an outbound {@link Response} carrying the buffered entity.
+     */
+    private Response toResponse() {
+        Response.ResponseBuilder builder = Response.status(status);
+        headers.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+        if (entity != null) {
+            builder.entity(entity);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Aborts the requests whose {@link #REPLAYED_SNAPSHOT} property holds a snapshot with a copy of
+     * it. Invoking such a request yields an inbound {@link Response} whose entity is read using the
+     * client's own readers, just like the original one.
+     *
+     * It's registered once on the client, so replaying a snapshot uses the client's runtime rather
+     * than building one for the request, and it runs before any other filter.
+     */
+    @Priority(Integer.MIN_VALUE)
+    static final class ReplayingFilter implements ClientRequestFilter {
+        @Override
+        public void filter(ClientRequestContext requestContext) {
+            Object snapshot = requestContext.getProperty(REPLAYED_SNAPSHOT);
+            if (snapshot instanceof ResponseSnapshot) {
+                requestContext.abortWith(((ResponseSnapshot) snapshot).toResponse());
+            }
+        }
+    }
+}
@@ -1,28 +1,31 @@
 package org.example.rs.http.retryingclient;
 
 import lombok.NonNull;
-import lombok.extern.slf4j.Slf4j;
 
 import javax.ws.rs.core.Response;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
-@Slf4j
 public class ResponseStatusHelper {
 
-    private final static Set<Response.Status> nonRetryables = nonRetryableStatuses();
+    private final static Set<Integer> nonRetryableCodes = nonRetryableStatuses().stream()
+            .map(Response.Status::getStatusCode)
+            .collect(Collectors.toSet());
 
     /**
-     * Checks whether the specified {@code statusType} represents a retryable HTTP error.
+     * Checks whether the specified {@code statusType} represents a retryable HTTP error, according
+     * to {@link StatusRetryPolicy#defaultPolicy()}.
      *
      * @param statusType the response status
      * @return true if the error is retryable, else false
      */
     public static boolean isRetryableError(@NonNull Response.StatusType statusType) {
-        boolean result = !nonRetryables.contains(statusType);
-        log.debug("Returning retryable = {} for response status code {}",
-                result, statusType.getStatusCode());
-        return result;
+        return StatusRetryPolicy.defaultPolicy().isRetryable(statusType.getStatusCode());
+    }
+
+    static boolean isNonRetryable(int statusCode) {
+        return nonRetryableCodes.contains(statusCode);
     }
 
     /**
@@ -35,6 +38,9 @@ public class ResponseStatusHelper {
 
         result.add(Response.Status.OK);
 
+        // A 304 is the answer to a conditional request revalidating a cached response
+        result.add(Response.Status.NOT_MODIFIED);
+
         // Populate non-retryable 4XXs
         result.add(Response.Status.BAD_REQUEST);
         result.add(Response.Status.UNAUTHORIZED);
@@ -0,0 +1,103 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import io.github.resilience4j.core.IntervalBiFunction;
+import io.github.resilience4j.core.IntervalFunction;
+import io.vavr.control.Either;
+import lombok.NonNull;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Waits for as long as a 429 (Too Many Requests) or 503 (Service Unavailable) response asks using
+ * its {@code Retry-After} header before the next attempt, since attempts made earlier would most
+ * likely be rejected too. Other outcomes wait for as long as the fallback interval function says.
+ *
+ * The wait is capped at a maximum, so that a server can't hold the caller for arbitrarily long.
+ */
+public class RetryAfterIntervalFunction implements IntervalBiFunction<Response> {
+    static final Duration DEFAULT_MAX_WAIT = Duration.ofMinutes(2);
+
+    private final IntervalFunction fallback;
+    private final long maxWaitMillis;
+
+    private RetryAfterIntervalFunction(IntervalFunction fallback, long maxWaitMillis) {
+        this.fallback = fallback;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public static RetryAfterIntervalFunction of(@NonNull IntervalFunction fallback) {
+        return of(fallback, DEFAULT_MAX_WAIT);
+    }
+
+    /**
+     * Creates an interval function honoring {@code Retry-After}.
+     *
+     * @param fallback the interval function used when the outcome of an attempt doesn't specify the wait
+     * @param maxWait the maximum wait a {@code Retry-After} header can ask for
+     * @return a new instance
+     */
+    public static RetryAfterIntervalFunction of(@NonNull IntervalFunction fallback, @NonNull Duration maxWait) {
+        Preconditions.checkArgument(!maxWait.isNegative(), "negative value: %s", maxWait);
+        return new RetryAfterIntervalFunction(fallback, maxWait.toMillis());
+    }
+
+    @Override
+    public Long apply(Integer numOfAttempts, Either<Throwable, Response> outcome) {
+        if (outcome.isRight()) {
+            Response response = outcome.get();
+            int status = response.getStatus();
+            if (status == Response.Status.TOO_MANY_REQUESTS.getStatusCode()
+                    || status == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                long retryAfterMillis = retryAfterMillis(response.getHeaderString(HttpHeaders.RETRY_AFTER),
+                        System.currentTimeMillis());
+                if (retryAfterMillis >= 0) {
+                    return Math.min(retryAfterMillis, maxWaitMillis);
+                }
+            }
+        }
+        return fallback.apply(numOfAttempts);
+    }
+
+    /**
+     * Parses the value of a {@code Retry-After} header, which is either a number of seconds or an
+     * HTTP date.
+     *
+     * @return the wait in milliseconds, or -1 if the value is missing or invalid
+     */
+    static long retryAfterMillis(String value, long nowMillis) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        if (isDigits(trimmed)) {
+            // Saturates rather than overflow: that many seconds is forever anyway, and capped by the caller
+            if (trimmed.length() > 18) {
+                return Long.MAX_VALUE;
+            }
+            long seconds = Long.parseLong(trimmed);
+            return seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : seconds * 1000;
+        }
+        try {
+            long dateMillis = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+            return Math.max(0, dateMillis - nowMillis);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return !value.isEmpty();
+    }
+}
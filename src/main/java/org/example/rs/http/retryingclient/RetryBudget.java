@@ -0,0 +1,79 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket that limits retries to a fraction of first attempts, so that a failing
+ * downstream doesn't receive a multiple of the normal traffic.
+ *
+ * Every first attempt deposits {@link RetryBudgetConfig#getRetryRatio()} tokens and every retry
+ * withdraws one. When there is less than one token left, retries are rejected.
+ */
+public class RetryBudget {
+    /**
+     * Tokens are kept as fixed-point numbers, so that fractional deposits don't need locking.
+     */
+    private static final long ONE_TOKEN = 1000L;
+
+    @Getter
+    private final RetryBudgetConfig config;
+    private final long depositPerAttempt;
+    private final long maxBalance;
+    private final AtomicLong balance;
+    private final LongAdder rejectedRetries = new LongAdder();
+
+    RetryBudget(@NonNull RetryBudgetConfig config) {
+        Preconditions.checkArgument(config.getRetryRatio() >= 0.0, "negative value: %s", config.getRetryRatio());
+        Preconditions.checkArgument(config.getMaxRetries() >= 0, "negative value: %s", config.getMaxRetries());
+        this.config = config;
+        this.depositPerAttempt = Math.round(config.getRetryRatio() * ONE_TOKEN);
+        this.maxBalance = config.getMaxRetries() * ONE_TOKEN;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * Returns the number of retries that may currently be made.
+     *
+     * @return the available retries, possibly fractional
+     */
+    public double getAvailableRetries() {
+        return (double) balance.get() / ONE_TOKEN;
+    }
+
+    /**
+     * Returns the number of retries that were not made because the budget was exhausted.
+     *
+     * @return the number of rejected retries
+     */
+    public long getRejectedRetries() {
+        return rejectedRetries.sum();
+    }
+
+    void onFirstAttempt() {
+        if (depositPerAttempt > 0) {
+            balance.accumulateAndGet(depositPerAttempt, (current, deposit) -> Math.min(current + deposit, maxBalance));
+        }
+    }
+
+    /**
+     * Withdraws one retry from the budget.
+     *
+     * @return true if the retry may be made, false if the budget is exhausted
+     */
+    boolean tryAcquireRetry() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < ONE_TOKEN) {
+                rejectedRetries.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - ONE_TOKEN));
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Configuration of a {@link RetryBudget}.
+ */
+@Builder
+@ToString
+public class RetryBudgetConfig {
+
+    /**
+     * The fraction of first attempts that may be retried, e.g. 0.1 allows one retry per ten
+     * requests once the initial balance has been used up.
+     */
+    @Builder.Default
+    @Getter
+    private double retryRatio = 0.1;
+
+    /**
+     * The maximum number of retries the budget can accumulate. The budget starts off full, so
+     * this is also the number of retries allowed in a burst.
+     */
+    @Builder.Default
+    @Getter
+    private int maxRetries = 10;
+}
@@ -18,7 +18,8 @@ import java.util.function.Predicate;
 public class RetryConfigHelper {
 
     /**
-     * Creates a {@link RetryConfig} with regular retry interval.
+     * Creates a {@link RetryConfig} with regular retry interval. A 429 or 503 response with a
+     * {@code Retry-After} header waits for as long as the header says instead.
      *
      * @param maxAttempts the maximum number of attempts (the initial call is the first one)
      * @param waitDurationSeconds wait duration between two retry attempts
@@ -35,8 +36,9 @@ public class RetryConfigHelper {
         Preconditions.checkArgument(waitDurationSeconds >= 0, "negative value: %s", waitDurationSeconds);
 
         RetryConfig.Builder<Response> resultBuilder = RetryConfig.<Response>custom();
+        long waitDurationMillis = Duration.ofSeconds(waitDurationSeconds).toMillis();
         resultBuilder.maxAttempts(maxAttempts)
-                .waitDuration(Duration.ofSeconds(waitDurationSeconds));
+                .intervalBiFunction(RetryAfterIntervalFunction.of(numOfAttempts -> waitDurationMillis));
 
         resultBuilder.retryOnResult(retryOnResult != null ? retryOnResult : defaultRetryOnResponse());
         resultBuilder.retryOnException(retryOnResult != null ? retryOnException : defaultRetryOnException());
@@ -46,7 +48,8 @@ public class RetryConfigHelper {
     }
 
     /**
-     * Creates a {@link RetryConfig} with exponential backoff.
+     * Creates a {@link RetryConfig} with exponential backoff. A 429 or 503 response with a
+     * {@code Retry-After} header waits for as long as the header says instead.
      *
      * @param initialIntervalMillis the initial interval, i.e. the wait time for the first retry
      * @param maxAttempts the maximum number of attempts (the initial call is the first one)
@@ -70,7 +73,7 @@ public class RetryConfigHelper {
                 multiplier);
         RetryConfig.Builder<Response> resultBuilder = RetryConfig.<Response>custom()
                 .maxAttempts(maxAttempts)
-                .intervalFunction(intervalFn);
+                .intervalBiFunction(RetryAfterIntervalFunction.of(intervalFn));
 
         resultBuilder.retryOnResult(retryOnResult != null ? retryOnResult : defaultRetryOnResponse());
         resultBuilder.retryOnException(retryOnResult != null ? retryOnException : defaultRetryOnException());
@@ -85,8 +88,7 @@ public class RetryConfigHelper {
      * @return the predicate representing the condition
      */
     static Predicate<Response> defaultRetryOnResponse() {
-        return response -> !response.getStatusInfo().equals(Response.Status.OK)
-                        && ResponseStatusHelper.isRetryableError(response.getStatusInfo());
+        return StatusRetryPolicy.defaultPolicy();
     }
 
     /**
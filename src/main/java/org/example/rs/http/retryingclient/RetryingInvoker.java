@@ -0,0 +1,318 @@
+package org.example.rs.http.retryingclient;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.retry.Retry;
+import io.vavr.control.Either;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Drives the attempts of a request using a {@link Retry}'s context.
+ *
+ * This does what {@link Retry#decorateSupplier(Retry, Supplier)} and
+ * {@link Retry#decorateCompletionStage(Retry, ScheduledExecutorService, Supplier)} do, but gets to
+ * decide on each attempt before the {@link Retry} waits for the next one: the response of a
+ * discarded attempt is released, retries are charged to the {@link RetryBudget}, if any, and every
+ * attempt is recorded in the {@link CallMetrics}.
+ *
+ * Calls rejected by an open circuit breaker or over the concurrency limit of their host are never
+ * retried, whatever the {@link Retry}'s exception predicate says, so that they fail fast rather than
+ * add to the pressure on the host.
+ *
+ * If the request has a {@link Deadline}, a {@link DeadlineExceededException} is thrown as soon as it
+ * passes, or before waiting for the next attempt if the wait would take past it.
+ *
+ * Every attempt and every wait between attempts is also recorded as a JDK Flight Recorder event,
+ * {@link AttemptEvent} and {@link BackoffWaitEvent}, when a recording has them enabled.
+ */
+@Slf4j
+class RetryingInvoker {
+
+    private RetryingInvoker() {
+    }
+
+    static Response invoke(@NonNull Retry retry, RetryBudget budget, @NonNull CallMetrics metrics,
+                           Deadline deadline, @NonNull Supplier<Response> responseSupp) {
+        Retry.Context<Response> context = retry.context();
+        if (budget != null) {
+            budget.onFirstAttempt();
+        }
+        long startNanos = System.nanoTime();
+        int attempt = 0;
+        boolean exhausted = false;
+        try {
+            while (true) {
+                attempt++;
+                if (deadline != null && deadline.isExpired()) {
+                    throw deadline.exceeded(null);
+                }
+                long attemptStartNanos = System.nanoTime();
+                AttemptEvent attemptEvent = new AttemptEvent();
+                attemptEvent.begin();
+                Response result;
+                try {
+                    result = responseSupp.get();
+                } catch (CallNotPermittedException | ConcurrencyLimitExceededException e) {
+                    metrics.onAttemptFailed(System.nanoTime() - attemptStartNanos);
+                    attemptEvent.finish(metrics, attempt, 0, e);
+                    exhausted = false;
+                    throw e;
+                } catch (RuntimeException e) {
+                    metrics.onAttemptFailed(System.nanoTime() - attemptStartNanos);
+                    attemptEvent.finish(metrics, attempt, 0, e);
+                    exhausted = matchesExceptionPredicate(retry, e);
+                    if (deadline != null && deadline.isExpired()) {
+                        throw deadline.exceeded(e);
+                    }
+                    if (isBudgetExhausted(retry, budget, attempt, e)) {
+                        throw e;
+                    }
+                    if (isRetryable(retry, attempt, e)
+                            && isWaitPastDeadline(retry, deadline, attempt, Either.left(e))) {
+                        throw deadline.exceeded(e);
+                    }
+                    BackoffWaitEvent waitEvent = new BackoffWaitEvent();
+                    waitEvent.begin();
+                    // Throws if the exception isn't to be retried, else waits for the next attempt.
+                    context.onRuntimeError(e);
+                    waitEvent.finish(metrics, attempt);
+                    continue;
+                }
+                metrics.onAttempt(System.nanoTime() - attemptStartNanos, result.getStatus());
+                attemptEvent.finish(metrics, attempt, result.getStatus(), null);
+                exhausted = matchesResultPredicate(retry, result);
+
+                if (isBudgetExhausted(retry, budget, attempt, result)) {
+                    return result;
+                }
+                if (isRetryable(retry, attempt, result)) {
+                    ResponseHelper.drainAndClose(result);
+                    if (isWaitPastDeadline(retry, deadline, attempt, Either.right(result))) {
+                        throw deadline.exceeded(null);
+                    }
+                }
+                BackoffWaitEvent waitEvent = new BackoffWaitEvent();
+                waitEvent.begin();
+                // Waits for the next attempt if the result is to be retried.
+                if (!context.onResult(result)) {
+                    context.onComplete();
+                    return result;
+                }
+                waitEvent.finish(metrics, attempt);
+            }
+        } finally {
+            metrics.onCall(System.nanoTime() - startNanos, attempt, exhausted);
+        }
+    }
+
+    static CompletionStage<Response> invokeAsync(@NonNull Retry retry, RetryBudget budget,
+                                                 @NonNull CallMetrics metrics, Deadline deadline,
+                                                 @NonNull ScheduledExecutorService scheduler,
+                                                 @NonNull Supplier<CompletionStage<Response>> responseSupp) {
+        if (budget != null) {
+            budget.onFirstAttempt();
+        }
+        AsyncAttempts attempts = new AsyncAttempts(retry, budget, metrics, deadline, scheduler, responseSupp);
+        attempts.run();
+        return attempts.promise;
+    }
+
+    private static boolean matchesResultPredicate(Retry retry, Response result) {
+        return retry.getRetryConfig().<Response>getResultPredicate() != null
+                && retry.getRetryConfig().<Response>getResultPredicate().test(result);
+    }
+
+    private static boolean matchesExceptionPredicate(Retry retry, Throwable throwable) {
+        return !isRejected(throwable)
+                && retry.getRetryConfig().getExceptionPredicate().test(throwable);
+    }
+
+    /**
+     * Checks whether the specified exception tells that an attempt was rejected without being sent.
+     */
+    private static boolean isRejected(Throwable throwable) {
+        return throwable instanceof CallNotPermittedException || throwable instanceof ConcurrencyLimitExceededException;
+    }
+
+    private static boolean isRetryable(Retry retry, int attempt, Response result) {
+        return attempt < retry.getRetryConfig().getMaxAttempts() && matchesResultPredicate(retry, result);
+    }
+
+    private static boolean isRetryable(Retry retry, int attempt, Throwable throwable) {
+        return attempt < retry.getRetryConfig().getMaxAttempts() && matchesExceptionPredicate(retry, throwable);
+    }
+
+    /**
+     * Checks whether the wait before the next attempt, as computed by the {@link Retry}'s interval
+     * function for the specified outcome, would take past the deadline.
+     */
+    private static boolean isWaitPastDeadline(Retry retry, Deadline deadline, int attempt,
+                                              Either<Throwable, Response> outcome) {
+        if (deadline == null) {
+            return false;
+        }
+        long waitMillis = retry.getRetryConfig().<Response>getIntervalBiFunction().apply(attempt, outcome);
+        if (deadline.isExceededBy(waitMillis)) {
+            log.warn("Not retrying {}, waiting {} ms would pass the deadline", retry.getName(), waitMillis);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isBudgetExhausted(Retry retry, RetryBudget budget, int attempt, Response result) {
+        if (budget != null && isRetryable(retry, attempt, result) && !budget.tryAcquireRetry()) {
+            log.warn("Retry budget of {} exhausted, not retrying response with status code {}",
+                    retry.getName(), result.getStatus());
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isBudgetExhausted(Retry retry, RetryBudget budget, int attempt, Throwable throwable) {
+        if (budget != null && isRetryable(retry, attempt, throwable) && !budget.tryAcquireRetry()) {
+            log.warn("Retry budget of {} exhausted, not retrying exception {}", retry.getName(), throwable.toString());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The attempts of an asynchronous request. Each attempt is started by {@link #run()}, either
+     * directly or, once the wait after the previous attempt is over, in the default async pool of
+     * {@link CompletableFuture} that the scheduler hands it over to. The scheduler's thread is shared
+     * by all requests, so it never starts an attempt or completes the promise itself, which would run
+     * the caller's dependent stages on it.
+     */
+    private static class AsyncAttempts implements Runnable {
+        private final Retry retry;
+        private final Retry.AsyncContext<Response> context;
+        private final RetryBudget budget;
+        private final CallMetrics metrics;
+        private final Deadline deadline;
+        private final ScheduledExecutorService scheduler;
+        private final Supplier<CompletionStage<Response>> responseSupp;
+        private final CompletableFuture<Response> promise = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private long attemptStartNanos;
+        private AttemptEvent attemptEvent;
+        private BackoffWaitEvent waitEvent;
+        private int attempt = 0;
+
+        AsyncAttempts(Retry retry, RetryBudget budget, CallMetrics metrics, Deadline deadline,
+                      ScheduledExecutorService scheduler, Supplier<CompletionStage<Response>> responseSupp) {
+            this.retry = retry;
+            this.context = retry.asyncContext();
+            this.budget = budget;
+            this.metrics = metrics;
+            this.deadline = deadline;
+            this.scheduler = scheduler;
+            this.responseSupp = responseSupp;
+        }
+
+        @Override
+        public void run() {
+            if (waitEvent != null) {
+                waitEvent.finish(metrics, attempt);
+                waitEvent = null;
+            }
+            attempt++;
+            if (deadline != null && deadline.isExpired()) {
+                fail(deadline.exceeded(null));
+                return;
+            }
+            attemptStartNanos = System.nanoTime();
+            attemptEvent = new AttemptEvent();
+            attemptEvent.begin();
+            CompletionStage<Response> stage;
+            try {
+                stage = responseSupp.get();
+            } catch (RuntimeException e) {
+                onError(e);
+                return;
+            }
+            stage.whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    onError(throwable);
+                } else {
+                    onResult(result);
+                }
+            });
+        }
+
+        private void onError(Throwable throwable) {
+            metrics.onAttemptFailed(System.nanoTime() - attemptStartNanos);
+            Throwable cause = throwable;
+            if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                    && throwable.getCause() != null) {
+                cause = throwable.getCause();
+            }
+            attemptEvent.finish(metrics, attempt, 0, cause);
+            if (deadline != null && deadline.isExpired()) {
+                fail(deadline.exceeded(cause));
+                return;
+            }
+            if (isRejected(cause) || isBudgetExhausted(retry, budget, attempt, cause)) {
+                fail(cause);
+                return;
+            }
+            long delay = context.onError(cause);
+            if (delay < 0) {
+                fail(cause);
+            } else if (deadline != null && deadline.isExceededBy(delay)) {
+                fail(deadline.exceeded(cause));
+            } else {
+                scheduleNextAttempt(delay);
+            }
+        }
+
+        private void onResult(Response result) {
+            metrics.onAttempt(System.nanoTime() - attemptStartNanos, result.getStatus());
+            attemptEvent.finish(metrics, attempt, result.getStatus(), null);
+            if (isBudgetExhausted(retry, budget, attempt, result)) {
+                complete(result);
+                return;
+            }
+            long delay = context.onResult(result);
+            if (delay < 0) {
+                try {
+                    context.onComplete();
+                    complete(result);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            } else {
+                ResponseHelper.drainAndClose(result);
+                if (deadline != null && deadline.isExceededBy(delay)) {
+                    fail(deadline.exceeded(null));
+                } else {
+                    scheduleNextAttempt(delay);
+                }
+            }
+        }
+
+        private void scheduleNextAttempt(long delay) {
+            waitEvent = new BackoffWaitEvent();
+            waitEvent.begin();
+            scheduler.schedule(() -> CompletableFuture.runAsync(this), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void complete(Response result) {
+            metrics.onCall(System.nanoTime() - startNanos, attempt, matchesResultPredicate(retry, result));
+            promise.complete(result);
+        }
+
+        private void fail(Throwable throwable) {
+            metrics.onCall(System.nanoTime() - startNanos, attempt, matchesExceptionPredicate(retry, throwable));
+            promise.completeExceptionally(throwable);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.rs.http.retryingclient;
+
+import com.google.common.base.Preconditions;
+import lombok.NonNull;
+
+import javax.ws.rs.core.Response;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Decides which response status codes are retried.
+ *
+ * The decision for every status code is compiled once into a table indexed by status code, so
+ * checking a response is an array lookup that neither allocates nor logs. A policy is a
+ * {@code Predicate<Response>}, so it can be used as the {@code retryOnResult} of the
+ * {@link io.github.resilience4j.retry.RetryConfig} of each retry name.
+ */
+public class StatusRetryPolicy implements Predicate<Response> {
+    private static final int MAX_STATUS_CODE = 599;
+    private static final StatusRetryPolicy DEFAULT = of(StatusRetryPolicy::isRetryableByDefault);
+
+    private final boolean[] retryable = new boolean[MAX_STATUS_CODE + 1];
+
+    private StatusRetryPolicy(IntPredicate isRetryable) {
+        for (int statusCode = 0; statusCode <= MAX_STATUS_CODE; statusCode++) {
+            retryable[statusCode] = isRetryable.test(statusCode);
+        }
+    }
+
+    /**
+     * Returns the default policy. Success (2XX) responses are never retried. Any other status code,
+     * including those {@link Response.Status} doesn't define such as 300 or 418, is retried unless
+     * {@link ResponseStatusHelper} lists it as not retryable.
+     *
+     * @return the default policy
+     */
+    public static StatusRetryPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    /**
+     * Compiles a policy from the specified condition.
+     *
+     * @param isRetryable returns true if and only if responses with the status code it is given are to be retried
+     * @return a new policy
+     */
+    public static StatusRetryPolicy of(@NonNull IntPredicate isRetryable) {
+        return new StatusRetryPolicy(isRetryable);
+    }
+
+    /**
+     * Compiles a policy retrying the specified status codes only.
+     *
+     * @param statusCodes the status codes to retry
+     * @return a new policy
+     */
+    public static StatusRetryPolicy ofStatusCodes(@NonNull int... statusCodes) {
+        boolean[] codes = new boolean[MAX_STATUS_CODE + 1];
+        for (int statusCode : statusCodes) {
+            Preconditions.checkArgument(statusCode >= 0 && statusCode <= MAX_STATUS_CODE,
+                    "invalid status code: %s", statusCode);
+            codes[statusCode] = true;
+        }
+        return new StatusRetryPolicy(statusCode -> codes[statusCode]);
+    }
+
+    /**
+     * Checks whether responses with the specified status code are to be retried.
+     *
+     * @param statusCode the status code
+     * @return true if the response is to be retried, else false
+     */
+    public boolean isRetryable(int statusCode) {
+        return statusCode >= 0 && statusCode <= MAX_STATUS_CODE && retryable[statusCode];
+    }
+
+    @Override
+    public boolean test(Response response) {
+        return isRetryable(response.getStatus());
+    }
+
+    private static boolean isRetryableByDefault(int statusCode) {
+        if (Response.Status.Family.familyOf(statusCode) == Response.Status.Family.SUCCESSFUL) {
+            return false;
+        }
+        return !ResponseStatusHelper.isNonRetryable(statusCode);
+    }
+}
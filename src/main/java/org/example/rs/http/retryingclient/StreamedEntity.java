@@ -0,0 +1,183 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.extern.slf4j.Slf4j;
+import org.glassfish.jersey.client.ClientRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The entity of a request sent by a {@link JdkHttpConnector}, published to the {@link java.net.http.HttpClient}
+ * as it's written rather than buffered, so that a large entity, e.g. a file, is never held in memory
+ * as a whole.
+ *
+ * The entity is written on a thread of its own, since writing blocks until the HttpClient has sent
+ * what was written before. The headers of the request are only known once the writing starts, as
+ * writer interceptors may add some, so the HttpClient is only handed the request then.
+ */
+@Slf4j
+final class StreamedEntity implements Flow.Publisher<ByteBuffer> {
+    private static final int CHUNK_SIZE = 8 * 1024;
+    /**
+     * The maximum number of chunks written ahead of what the HttpClient has sent.
+     */
+    private static final int MAX_BUFFERED_CHUNKS = 16;
+
+    private final SubmissionPublisher<ByteBuffer> publisher =
+            new SubmissionPublisher<>(ForkJoinPool.commonPool(), MAX_BUFFERED_CHUNKS);
+    private final CompletableFuture<Map<String, List<String>>> headers = new CompletableFuture<>();
+    private final CompletableFuture<Void> subscribed = new CompletableFuture<>();
+    private final AtomicBoolean subscribedOnce = new AtomicBoolean();
+
+    private StreamedEntity() {
+    }
+
+    /**
+     * Starts writing the entity of the specified request on a thread of the specified executor.
+     */
+    static StreamedEntity write(ClientRequest request, Executor writers) {
+        StreamedEntity result = new StreamedEntity();
+        writers.execute(() -> result.writeFrom(request));
+        return result;
+    }
+
+    /**
+     * Returns a stage that completes with the headers of the request once the entity starts being
+     * written, or exceptionally if writing it fails before that.
+     */
+    CompletableFuture<Map<String, List<String>>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Stops the writing of the entity, if it's still going, as the request failed.
+     */
+    void abandon(Throwable cause) {
+        subscribed.completeExceptionally(cause);
+        publisher.closeExceptionally(cause);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribedOnce.compareAndSet(false, true)) {
+            // The entity was streamed once already, e.g. before a redirect
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IOException("The streamed request entity can't be sent again"));
+            return;
+        }
+        publisher.subscribe(subscriber);
+        subscribed.complete(null);
+    }
+
+    private void writeFrom(ClientRequest request) {
+        try {
+            request.setStreamProvider(contentLength -> {
+                headers.complete(copyOf(request.getStringHeaders()));
+                // Chunks published before the HttpClient subscribes would be lost
+                awaitSubscription();
+                return new PublishingOutputStream();
+            });
+            request.writeEntity();
+            headers.complete(copyOf(request.getStringHeaders()));
+            publisher.close();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to write the request entity: {}", e.toString());
+            headers.completeExceptionally(e);
+            publisher.closeExceptionally(e);
+        }
+    }
+
+    private void awaitSubscription() throws IOException {
+        try {
+            subscribed.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Request not sent", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the request to be sent");
+        }
+    }
+
+    private static Map<String, List<String>> copyOf(Map<String, List<String>> headers) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        headers.forEach((name, values) -> result.put(name, new ArrayList<>(values)));
+        return result;
+    }
+
+    /**
+     * Publishes what is written in chunks, blocking while the HttpClient is too far behind.
+     */
+    private class PublishingOutputStream extends OutputStream {
+        private byte[] chunk = new byte[CHUNK_SIZE];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == chunk.length) {
+                publishChunk();
+            }
+            chunk[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == chunk.length) {
+                    publishChunk();
+                }
+                int copied = Math.min(count, chunk.length - length);
+                System.arraycopy(bytes, offset, chunk, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (length > 0) {
+                publishChunk();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (length > 0) {
+                publishChunk();
+            }
+        }
+
+        private void publishChunk() throws IOException {
+            try {
+                publisher.submit(ByteBuffer.wrap(chunk, 0, length));
+            } catch (IllegalStateException e) {
+                // Closed as the request was abandoned
+                throw new IOException("Request not sent", e);
+            }
+            // The published chunk is read asynchronously, so it can't be reused
+            chunk = new byte[CHUNK_SIZE];
+            length = 0;
+        }
+    }
+}
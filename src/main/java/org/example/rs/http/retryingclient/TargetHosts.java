@@ -0,0 +1,54 @@
+package org.example.rs.http.retryingclient;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Extracts the host from request targets, caching the result so that the target URL doesn't need
+ * to be parsed on every call.
+ */
+final class TargetHosts {
+    private static final int MAX_CACHED_TARGETS = 10_000;
+    private static final String NO_HOST = "";
+    private static final Map<String, String> HOSTS = new ConcurrentHashMap<>();
+
+    private TargetHosts() {
+    }
+
+    /**
+     * Returns the host of the specified target URL.
+     *
+     * @param target the target URL
+     * @return the host, or null if the URL doesn't have one
+     */
+    static String hostOf(String target) {
+        String result = HOSTS.get(target);
+        if (result == null) {
+            result = URI.create(target).getHost();
+            if (result == null) {
+                result = NO_HOST;
+            }
+            if (HOSTS.size() >= MAX_CACHED_TARGETS) {
+                HOSTS.clear();
+            }
+            HOSTS.put(target, result);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Returns the host of the target of the specified request, which is taken from its template
+     * rather than parsed from the target if it was bound from a {@link RequestTemplate}.
+     *
+     * @param request the request
+     * @return the host, or null if the target doesn't have one
+     */
+    static String hostOf(GetRequest request) {
+        RequestTemplate.Binding binding = request.getBinding();
+        if (binding != null && binding.isBoundTo(request)) {
+            return binding.getTemplate().getHost();
+        }
+        return hostOf(request.getTarget());
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.rs.http.retryingclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import javax.ws.rs.HttpMethod;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An HTTP POST, PUT, PATCH or DELETE request.
+ *
+ * PUT and DELETE are idempotent, so they are retried like GET requests. POST and PATCH requests are
+ * only retried if they carry an {@link #idempotencyKeyHeader idempotency key}, which lets the server
+ * recognize the attempts of a request as one; unless told otherwise, the client generates one.
+ */
+@Builder(toBuilder = true)
+@ToString
+public class WriteRequest {
+    @NonNull
+    @Getter
+    private String method;
+
+    @NonNull
+    @Getter
+    private String target;
+
+    /**
+     * The entity sent with the request, if any. It is sent again as is on every attempt.
+     */
+    @Getter
+    private RequestBody body;
+
+    @Builder.Default
+    @Getter
+    private String acceptedResponse = "application/json";
+
+    @Builder.Default
+    @Getter
+    private Map<String, Object> headers = new HashMap<>();
+
+    @Builder.Default
+    @Getter
+    private Map<String, String> queryParams = new HashMap<>();
+
+    /**
+     * The header carrying the idempotency key of the request.
+     */
+    @Builder.Default
+    @Getter
+    @NonNull
+    private String idempotencyKeyHeader = "Idempotency-Key";
+
+    /**
+     * Whether an idempotency key is generated for a POST or PATCH request that doesn't have one.
+     * Without a key, such a request isn't retried.
+     */
+    @Builder.Default
+    @Getter
+    private boolean generateIdempotencyKey = true;
+
+    /**
+     * The total time allowed for the request, across all its attempts and the waits between them. If
+     * null, the timeout of its retry name, if any, applies.
+     */
+    @Getter
+    private Duration timeout;
+
+    public static WriteRequestBuilder post(String target, RequestBody body) {
+        return builder().method(HttpMethod.POST).target(target).body(body);
+    }
+
+    public static WriteRequestBuilder put(String target, RequestBody body) {
+        return builder().method(HttpMethod.PUT).target(target).body(body);
+    }
+
+    public static WriteRequestBuilder patch(String target, RequestBody body) {
+        return builder().method("PATCH").target(target).body(body);
+    }
+
+    public static WriteRequestBuilder delete(String target) {
+        return builder().method(HttpMethod.DELETE).target(target);
+    }
+
+    /**
+     * Checks whether the method of the request is idempotent, so that it can be retried without an
+     * idempotency key.
+     */
+    boolean isIdempotentMethod() {
+        return HttpMethod.PUT.equalsIgnoreCase(method) || HttpMethod.DELETE.equalsIgnoreCase(method);
+    }
+
+    boolean hasIdempotencyKey() {
+        return headers.keySet().stream().anyMatch(idempotencyKeyHeader::equalsIgnoreCase);
+    }
+}
@@ -1,25 +1,85 @@
 package org.example.rs.http.retryingclient;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.retry.RetryConfig;
+import io.vavr.control.Either;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.headRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
+import static com.github.tomakehurst.wiremock.client.WireMock.patch;
+import static com.github.tomakehurst.wiremock.client.WireMock.patchRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -206,7 +266,1370 @@ public class HttpApiClientTests {
                 });
         assertTrue(response.getStatusInfo().equals(Response.Status.OK));
     }
+
+    @Test
+    public void getAsync_withSuccessfulResponseAfterRetry_returns200Ok() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/async-resource")
+                .inScenario("AsyncRetry")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withStatus(Response.Status.SERVICE_UNAVAILABLE.getStatusCode())
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+                .willSetStateTo("Step1")
+        );
+
+        stubFor(get("/my/async-resource")
+                .inScenario("AsyncRetry")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+        );
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 1, null, null));
+        Response response = client.getWithRetriesAsync(
+                GetRequest.builder()
+                        .target("http://localhost:8080/my/async-resource")
+                        .acceptedResponse("text/xml")
+                        .build(),
+                null).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        assertTrue(response.getStatusInfo().equals(Response.Status.OK));
+    }
+
+    @Test
+    public void getAsync_withAttemptFailingAfterWait_completesOffTheRetrySchedulerThread() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(2, 1, null, null));
+        CompletableFuture<String> completingThread = client.getWithRetriesAsync(
+                GetRequest.builder().target("http://localhost:8080/my/resource").build(),
+                null,
+                () -> {
+                    if (attempts.incrementAndGet() == 1) {
+                        return CompletableFuture.completedFuture(Response.serverError().build());
+                    }
+                    throw new IllegalStateException("rejected");
+                })
+                .toCompletableFuture()
+                .handle((response, throwable) -> Thread.currentThread().getName());
+
+        // The second attempt is started after the wait, and fails without being sent
+        assertFalse(completingThread.get(5, TimeUnit.SECONDS).startsWith("http-api-client-retry"));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void genericGetAsync_withNotOkResponse_completesWithExpectedException() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/async-bad-resource")
+                .willReturn(aResponse()
+                        .withStatus(Response.Status.BAD_REQUEST.getStatusCode())
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+        );
+
+        CompletableFuture<Dummy> result = new HttpApiClient().getWithRetriesAsync(Dummy.class,
+                GetRequest.builder()
+                        .target("http://localhost:8080/my/async-bad-resource")
+                        .acceptedResponse("text/xml")
+                        .build(),
+                null).toCompletableFuture();
+        try {
+            result.join();
+            fail("ResponseNotOkException not thrown");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof ResponseNotOkException);
+            assertTrue(((ResponseNotOkException) e.getCause()).getResponse().getStatusInfo()
+                    .equals(Response.Status.BAD_REQUEST));
+        }
+    }
+
+    @Test
+    public void get_withRetriedResponses_closesDiscardedResponses() {
+        List<Response> responses = Arrays.asList(
+                Response.serverError().build(),
+                Response.status(Response.Status.BAD_GATEWAY).build(),
+                Response.ok().build());
+        Iterator<Response> responseIterator = responses.iterator();
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+        Response response = client.getWithRetries(
+                GetRequest.builder().target("http://localhost:8080/my/resource").build(),
+                null,
+                responseIterator::next);
+
+        assertTrue(response.getStatusInfo().equals(Response.Status.OK));
+        assertTrue(isClosed(responses.get(0)));
+        assertTrue(isClosed(responses.get(1)));
+        assertFalse(isClosed(responses.get(2)));
+    }
+
+    @Test
+    public void get_withPooledClient_releasesConnectionsOfRetriedResponses() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/pooled-resource")
+                .inScenario("Pooled")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withStatus(503)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Unavailable</response>"))
+                .willSetStateTo("Step1")
+        );
+        stubFor(get("/my/pooled-resource")
+                .inScenario("Pooled")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+                .willSetStateTo(STARTED)
+        );
+
+        // A single connection, which the retry only gets if the discarded 503 response released it
+        Client pooledClient = ClientHelper.pooledClient(PooledTransportConfig.builder()
+                .maxTotalConnections(1)
+                .maxConnectionsPerHost(1)
+                .connectionRequestTimeout(Duration.ofSeconds(2))
+                .build());
+        try {
+            HttpApiClient client = new HttpApiClient(pooledClient,
+                    RetryConfigHelper.regularIntervalConfig(2, 0, null, null));
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                String body = client.getWithRetries(String.class,
+                        GetRequest.builder()
+                                .target("http://localhost:8080/my/pooled-resource")
+                                .acceptedResponse("text/xml")
+                                .build(),
+                        null);
+                assertTrue(body.contains("Some content"));
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            }
+        } finally {
+            pooledClient.close();
+        }
+    }
+
+    @Test
+    public void get_withExhaustedRetryBudget_failsFastWithLastResponse() {
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+        client.addRetryBudget(null, RetryBudgetConfig.builder().retryRatio(0.0).maxRetries(2).build());
+
+        AtomicInteger numAttempts = new AtomicInteger(0);
+        GetRequest request = GetRequest.builder().target("http://localhost:8080/my/resource").build();
+        Response response = client.getWithRetries(request, null, () -> {
+            numAttempts.incrementAndGet();
+            return Response.serverError().build();
+        });
+        // Both retries of the budget are used up by the first request...
+        assertTrue(response.getStatusInfo().equals(Response.Status.INTERNAL_SERVER_ERROR));
+        assertEquals(3, numAttempts.get());
+        assertEquals(0.0, client.getRetryBudget(null).get().getAvailableRetries(), 0.0);
+
+        // ...so the second one isn't retried at all.
+        numAttempts.set(0);
+        response = client.getWithRetries(request, null, () -> {
+            numAttempts.incrementAndGet();
+            return Response.serverError().build();
+        });
+        assertTrue(response.getStatusInfo().equals(Response.Status.INTERNAL_SERVER_ERROR));
+        assertEquals(1, numAttempts.get());
+        assertEquals(1, client.getRetryBudget(null).get().getRejectedRetries());
+    }
+
+    @Test
+    public void get_withOpenCircuitBreaker_failsFastWithoutAttempts() {
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+        client.enableCircuitBreakers(CircuitBreakerConfigHelper.hostCircuitBreakerConfig(50, 3,
+                Duration.ofMinutes(1), 1));
+
+        AtomicInteger numAttempts = new AtomicInteger(0);
+        GetRequest request = GetRequest.builder().target("http://localhost:8080/my/resource").build();
+        Response response = client.getWithRetries(request, null, () -> {
+            numAttempts.incrementAndGet();
+            return Response.serverError().build();
+        });
+        assertTrue(response.getStatusInfo().equals(Response.Status.INTERNAL_SERVER_ERROR));
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreaker("localhost").get().getState());
+
+        numAttempts.set(0);
+        try {
+            client.getWithRetries(request, null, () -> {
+                numAttempts.incrementAndGet();
+                return Response.ok().build();
+            });
+            fail("CallNotPermittedException not thrown");
+        } catch (CallNotPermittedException e) {
+            assertEquals(0, numAttempts.get());
+        }
+    }
+
+    @Test
+    public void get_withSlowFirstAttemptAndHedging_returnsHedgedResponse() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/hedged-resource")
+                .inScenario("Hedging")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(3000)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Slow content</response>"))
+                .willSetStateTo("Hedged")
+        );
+
+        stubFor(get("/my/hedged-resource")
+                .inScenario("Hedging")
+                .whenScenarioStateIs("Hedged")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Fast content</response>"))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        client.addHedgingConfig(null, HedgingConfig.builder().delay(Duration.ofMillis(200)).build());
+
+        Instant start = Instant.now();
+        String body = client.getWithRetries(String.class,
+                GetRequest.builder()
+                        .target("http://localhost:8080/my/hedged-resource")
+                        .acceptedResponse("text/xml")
+                        .build(),
+                null);
+        assertTrue(body.contains("Fast content"));
+        assertTrue(Duration.between(start, Instant.now()).compareTo(Duration.ofMillis(2500)) < 0);
+    }
+
+    @Test
+    public void get_withConcurrentIdenticalRequestsAndCoalescing_invokesOnce() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/coalesced-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        client.enableRequestCoalescing();
+        GetRequest request = GetRequest.builder()
+                .target("http://localhost:8080/my/coalesced-resource")
+                .acceptedResponse("text/xml")
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                bodies.add(executor.submit(() -> client.getWithRetries(String.class, request, null)));
+            }
+            for (Future<String> body : bodies) {
+                assertEquals("<response>Some content</response>", body.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        verify(1, getRequestedFor(urlEqualTo("/my/coalesced-resource")));
+    }
+
+    @Test
+    public void coalescer_withShortDeadlineWaiterJoiningSlowLeader_failsWaiterAtItsDeadline() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        GetRequest request = GetRequest.builder().target("http://localhost:8080/my/slow-leader").build();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLeader = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The leader overruns its own deadline, e.g. while reading a slow response
+            Future<Response> leader = executor.submit(() -> coalescer.execute(request, null,
+                    Deadline.after(Duration.ofMillis(200)),
+                    () -> {
+                        leaderStarted.countDown();
+                        try {
+                            releaseLeader.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return Response.ok("ok").build();
+                    },
+                    snapshot -> Response.ok().build()));
+            assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            try {
+                coalescer.execute(request, null, Deadline.after(Duration.ofMillis(200)),
+                        () -> {
+                            throw new AssertionError("Expected to wait for the leader");
+                        },
+                        snapshot -> Response.ok().build());
+                fail("Expected a DeadlineExceededException");
+            } catch (DeadlineExceededException e) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue("waited " + elapsedMillis + " ms", elapsedMillis < 1000);
+            }
+            releaseLeader.countDown();
+            assertEquals(200, leader.get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            releaseLeader.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void get_withCoalescingAndDifferentTimeouts_doesNotShareInvocation() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/coalesced-slow-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(2000)
+                        .withBody("Some content"))
+        );
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(1, 0, null, null));
+        client.enableRequestCoalescing();
+        GetRequest request = GetRequest.builder()
+                .target("http://localhost:8080/my/coalesced-slow-resource")
+                .acceptedResponse("text/plain")
+                .build();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> client.getWithRetries(String.class, request, null));
+            Thread.sleep(200);
+            long start = System.nanoTime();
+            try {
+                client.getWithRetries(String.class, request.toBuilder().timeout(Duration.ofMillis(300)).build(), null);
+                fail("Expected a DeadlineExceededException");
+            } catch (DeadlineExceededException e) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue("waited " + elapsedMillis + " ms", elapsedMillis < 1500);
+            }
+            assertEquals("Some content", leader.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        verify(2, getRequestedFor(urlEqualTo("/my/coalesced-slow-resource")));
+    }
+
+    @Test
+    public void get_withCoalescingAndNoWaiters_streamsResponse() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/coalesced-streamed-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"id\": 1, \"name\": \"one\"}, {\"id\": 2, \"name\": \"two\"}]")
+                        .withChunkedDribbleDelay(5, 2000))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        client.enableRequestCoalescing();
+        long start = System.nanoTime();
+        try (Stream<Item> items = client.getWithRetriesAsStream(Item.class, GetRequest.builder()
+                .target("http://localhost:8080/my/coalesced-streamed-resource")
+                .build(), null)) {
+            // Buffering the entity would have waited for all of it
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("waited " + elapsedMillis + " ms", elapsedMillis < 1500);
+            assertEquals(2, items.count());
+        }
+    }
+
+    @Test
+    public void get_withCachedResponseAndNotModified_servesCachedResponse() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/cached-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withHeader("ETag", "\"v1\"")
+                        .withBody("<response>Some content</response>"))
+        );
+        stubFor(get("/my/cached-resource")
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(Response.Status.NOT_MODIFIED.getStatusCode()))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        client.enableResponseCache(ResponseCacheConfig.builder().build());
+        GetRequest request = GetRequest.builder()
+                .target("http://localhost:8080/my/cached-resource")
+                .acceptedResponse("text/xml")
+                .build();
+
+        assertEquals("<response>Some content</response>", client.getWithRetries(String.class, request, null));
+        assertEquals("<response>Some content</response>", client.getWithRetries(String.class, request, null));
+        verify(2, getRequestedFor(urlEqualTo("/my/cached-resource")));
+        verify(1, getRequestedFor(urlEqualTo("/my/cached-resource"))
+                .withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void getAsyncAndHedged_withFreshCachedResponse_servesCachedResponse() throws Exception {
+        configureFor("localhost", 8080);
+        for (String path : Arrays.asList("/my/cached-async-resource", "/my/cached-hedged-resource")) {
+            stubFor(get(path)
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withHeader("Cache-Control", "max-age=60")
+                            .withBody("cached")));
+        }
+
+        HttpApiClient client = new HttpApiClient();
+        client.enableResponseCache(ResponseCacheConfig.builder().build());
+        client.addHedgingConfig("hedged", HedgingConfig.builder().delay(Duration.ofSeconds(10)).build());
+        GetRequest asyncRequest = GetRequest.builder()
+                .target("http://localhost:8080/my/cached-async-resource")
+                .acceptedResponse("text/plain")
+                .build();
+        GetRequest hedgedRequest = GetRequest.builder()
+                .target("http://localhost:8080/my/cached-hedged-resource")
+                .acceptedResponse("text/plain")
+                .build();
+        for (int i = 0; i < 4; i++) {
+            assertEquals("cached", client.getWithRetriesAsync(String.class, asyncRequest, null)
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS));
+            assertEquals("cached", client.getWithRetries(String.class, hedgedRequest, "hedged"));
+            assertEquals("cached", client.getWithRetriesAsync(String.class, hedgedRequest, "hedged")
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS));
+        }
+
+        verify(1, getRequestedFor(urlEqualTo("/my/cached-async-resource")));
+        verify(1, getRequestedFor(urlEqualTo("/my/cached-hedged-resource")));
+    }
+
+    @Test
+    public void get_withCacheAndDifferentCallers_neverServesOneCallersResponseToAnother() {
+        configureFor("localhost", 8080);
+        for (String caller : Arrays.asList("alice", "bob")) {
+            stubFor(get("/my/account")
+                    .withHeader("Authorization", equalTo("Bearer " + caller))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withHeader("Cache-Control", "max-age=60")
+                            .withBody(caller)));
+            stubFor(get("/my/tenant-resource")
+                    .withHeader("X-Tenant", equalTo(caller))
+                    .willReturn(aResponse()
+                            .withStatus(200)
+                            .withHeader("Cache-Control", "max-age=60")
+                            .withBody(caller)));
+        }
+        stubFor(get("/my/private-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Cache-Control", "private, max-age=60")
+                        .withBody("mine")));
+
+        HttpApiClient client = new HttpApiClient();
+        client.enableResponseCache(ResponseCacheConfig.builder().build());
+        for (String caller : Arrays.asList("alice", "bob", "alice")) {
+            assertEquals(caller, client.getWithRetries(String.class, GetRequest.builder()
+                    .target("http://localhost:8080/my/account")
+                    .acceptedResponse("text/plain")
+                    .headers(Collections.singletonMap("Authorization", "Bearer " + caller))
+                    .build(), null));
+            assertEquals(caller, client.getWithRetries(String.class, GetRequest.builder()
+                    .target("http://localhost:8080/my/tenant-resource")
+                    .acceptedResponse("text/plain")
+                    .headers(Collections.singletonMap("X-Tenant", caller))
+                    .build(), null));
+        }
+        for (int i = 0; i < 2; i++) {
+            client.getWithRetries(GetRequest.builder().target("http://localhost:8080/my/private-resource").build(),
+                    null).close();
+        }
+
+        // Responses to requests with credentials and private responses aren't cached
+        verify(3, getRequestedFor(urlEqualTo("/my/account")));
+        verify(2, getRequestedFor(urlEqualTo("/my/private-resource")));
+        // Other responses are cached per header value
+        verify(1, getRequestedFor(urlEqualTo("/my/tenant-resource")).withHeader("X-Tenant", equalTo("alice")));
+        verify(1, getRequestedFor(urlEqualTo("/my/tenant-resource")).withHeader("X-Tenant", equalTo("bob")));
+    }
+
+    @Test
+    public void get_withServerErrorsAndServeStaleOnError_servesStaleResponse() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/stale-resource")
+                .inScenario("Stale")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")
+                        .withBody("<response>Some content</response>"))
+                .willSetStateTo("Failing")
+        );
+        stubFor(get("/my/stale-resource")
+                .inScenario("Stale")
+                .whenScenarioStateIs("Failing")
+                .willReturn(aResponse()
+                        .withStatus(Response.Status.SERVICE_UNAVAILABLE.getStatusCode()))
+        );
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(2, 0, null, null));
+        client.enableResponseCache(ResponseCacheConfig.builder().serveStaleOnError(true).build());
+        GetRequest request = GetRequest.builder()
+                .target("http://localhost:8080/my/stale-resource")
+                .acceptedResponse("text/xml")
+                .build();
+
+        assertEquals("<response>Some content</response>", client.getWithRetries(String.class, request, null));
+        Response response = client.getWithRetries(request, null);
+        assertTrue(response.getStatusInfo().equals(Response.Status.OK));
+        assertTrue(response.getHeaderString("Warning").startsWith("111"));
+        assertEquals("<response>Some content</response>", response.readEntity(String.class));
+    }
+
+    @Test
+    public void getAll_withMixedResponses_returnsResultsInRequestOrder() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/batch-resource/ok")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+        );
+        stubFor(get("/my/batch-resource/bad")
+                .willReturn(aResponse()
+                        .withStatus(Response.Status.BAD_REQUEST.getStatusCode()))
+        );
+
+        List<GetRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(GetRequest.builder()
+                    .target("http://localhost:8080/my/batch-resource/" + (i % 5 == 0 ? "bad" : "ok"))
+                    .acceptedResponse("text/xml")
+                    .build());
+        }
+
+        List<BatchResult<String>> results = new HttpApiClient().getAllWithRetries(String.class, requests, null,
+                BatchConfig.builder().maxConcurrency(4).maxConcurrencyPerHost(2).build());
+
+        assertEquals(requests.size(), results.size());
+        for (int i = 0; i < requests.size(); i++) {
+            BatchResult<String> result = results.get(i);
+            assertTrue(result.getRequest() == requests.get(i));
+            if (i % 5 == 0) {
+                assertTrue(result.getError() instanceof ResponseNotOkException);
+            } else {
+                assertEquals("<response>Some content</response>", result.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void getAll_withLargeBatch_usesNoMorePlatformThreadsThanMaxConcurrency() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/large-batch-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(20)
+                        .withBody("Some content"))
+        );
+
+        List<GetRequest> requests = Collections.nCopies(100, GetRequest.builder()
+                .target("http://localhost:8080/my/large-batch-resource")
+                .acceptedResponse("text/plain")
+                .build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<BatchResult<String>>> results = executor.submit(() -> new HttpApiClient()
+                    .getAllWithRetries(String.class, requests, null, BatchConfig.builder().maxConcurrency(4).build()));
+            // Without virtual threads, the requests run on platform threads of the batch
+            long maxBatchThreads = 0;
+            while (!results.isDone()) {
+                maxBatchThreads = Math.max(maxBatchThreads, Thread.getAllStackTraces().keySet().stream()
+                        .filter(thread -> thread.getName().startsWith("http-api-client-batch-"))
+                        .count());
+                Thread.sleep(5);
+            }
+            assertTrue(maxBatchThreads <= 4);
+            assertTrue(results.get().stream().allMatch(BatchResult::isSuccess));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void getAll_withDeadlineExceeded_reportsTimedOutRequests() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/slow-batch-resource")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(3000)
+                        .withHeader("Content-Type", "text/xml")
+                        .withBody("<response>Some content</response>"))
+        );
+
+        GetRequest request = GetRequest.builder()
+                .target("http://localhost:8080/my/slow-batch-resource")
+                .acceptedResponse("text/xml")
+                .build();
+        Instant start = Instant.now();
+        List<BatchResult<Response>> results = new HttpApiClient().getAllWithRetries(Arrays.asList(request, request),
+                null, BatchConfig.builder().deadline(Duration.ofMillis(500)).build());
+
+        assertTrue(Duration.between(start, Instant.now()).compareTo(Duration.ofMillis(2500)) < 0);
+        for (BatchResult<Response> result : results) {
+            assertFalse(result.isSuccess());
+            assertTrue(result.getError() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void getAsStream_withJsonArray_streamsElements() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/items")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"id\": 1, \"name\": \"one\"}, {\"id\": 2, \"name\": \"two\", \"extra\": true}]"))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        try (Stream<Item> items = client.getWithRetriesAsStream(Item.class,
+                GetRequest.builder().target("http://localhost:8080/my/items").build(), null)) {
+            List<Item> result = items.collect(Collectors.toList());
+            assertEquals(2, result.size());
+            assertEquals(1, result.get(0).id);
+            assertEquals("two", result.get(1).name);
+        }
+    }
+
+    @Test
+    public void getMetrics_afterRetriedCall_recordsAttemptsAndStatusCodes() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/metered")
+                .inScenario("Metrics")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("Step1")
+        );
+        stubFor(get("/my/metered")
+                .inScenario("Metrics")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse().withStatus(200))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        client.getWithRetries(GetRequest.builder().target("http://localhost:8080/my/metered").build(), null)
+                .close();
+
+        List<CallMetricsSnapshot> snapshots = client.getMetrics().snapshot();
+        assertEquals(1, snapshots.size());
+        CallMetricsSnapshot snapshot = snapshots.get(0);
+        assertEquals("localhost", snapshot.getHost());
+        assertEquals(1, snapshot.getCalls());
+        assertEquals(2, snapshot.getAttempts());
+        assertEquals(1, snapshot.getRetries());
+        assertEquals(0, snapshot.getExhaustedCalls());
+        assertEquals(Long.valueOf(1), snapshot.getStatusCodeCounts().get(503));
+        assertEquals(Long.valueOf(1), snapshot.getStatusCodeCounts().get(200));
+    }
+
+    @Test
+    public void get_withRetryAfterOn503_waitsAsLongAsRetryAfterSays() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/throttled")
+                .inScenario("Throttled")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse()
+                        .withStatus(503)
+                        .withHeader("Retry-After", "1"))
+                .willSetStateTo("Step1")
+        );
+        stubFor(get("/my/throttled")
+                .inScenario("Throttled")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse().withStatus(200))
+        );
+
+        // Would wait 10 seconds without the Retry-After header
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(2, 10, null, null));
+        long start = System.nanoTime();
+        Response response = client.getWithRetries(
+                GetRequest.builder().target("http://localhost:8080/my/throttled").build(), null);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(200, response.getStatus());
+        assertTrue("waited " + elapsedMillis + " ms", elapsedMillis >= 1000 && elapsedMillis < 5000);
+    }
+
+    @Test
+    public void retryAfterIntervalFunction_withHugeDeltaSeconds_waitsMaxWait() {
+        RetryAfterIntervalFunction intervalFunction =
+                RetryAfterIntervalFunction.of(attempt -> 10L, Duration.ofSeconds(30));
+        for (String retryAfter : Arrays.asList("12345678901234567", "9223372036854775807", "123456789012345678901")) {
+            Response response = Response.status(503).header("Retry-After", retryAfter).build();
+            assertEquals(Long.valueOf(30_000), intervalFunction.apply(1, Either.right(response)));
+        }
+    }
+
+    @Test
+    public void statusRetryPolicy_withCodesUnknownToStatusEnum_retriesUnlessSuccessOrListedNonRetryable() {
+        StatusRetryPolicy policy = StatusRetryPolicy.defaultPolicy();
+        assertTrue(policy.isRetryable(300));
+        assertTrue(policy.isRetryable(418));
+        assertTrue(policy.isRetryable(422));
+        assertTrue(policy.isRetryable(503));
+        assertTrue(policy.isRetryable(599));
+        assertFalse(policy.isRetryable(204));
+        assertFalse(policy.isRetryable(304));
+        assertFalse(policy.isRetryable(400));
+        assertFalse(policy.isRetryable(501));
+        assertFalse(policy.isRetryable(1000));
+    }
+
+    @Test
+    public void get_with300ThenOk_retries300() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/multiple-choices")
+                .inScenario("MultipleChoices")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(300))
+                .willSetStateTo("Step1")
+        );
+        stubFor(get("/my/multiple-choices")
+                .inScenario("MultipleChoices")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse().withStatus(200))
+        );
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(2, 0, null, null));
+        Response response = client.getWithRetries(
+                GetRequest.builder().target("http://localhost:8080/my/multiple-choices").build(), null);
+        assertEquals(200, response.getStatus());
+        verify(2, getRequestedFor(urlEqualTo("/my/multiple-choices")));
+    }
+
+    @Test
+    public void get_withBackoffPastDeadline_throwsDeadlineExceededWithoutWaiting() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/unavailable").willReturn(aResponse().withStatus(503)));
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 10, null, null));
+        long start = System.nanoTime();
+        try {
+            client.getWithRetries(GetRequest.builder()
+                    .target("http://localhost:8080/my/unavailable")
+                    .timeout(Duration.ofSeconds(2))
+                    .build(), null);
+            fail("Expected a DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        }
+    }
+
+    @Test
+    public void get_withSlowResponse_cutsAttemptTimeoutToDeadline() {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/slow").willReturn(aResponse().withStatus(200).withFixedDelay(5000)));
+
+        HttpApiClient client = new HttpApiClient();
+        client.addTimeout(null, Duration.ofMillis(500));
+        long start = System.nanoTime();
+        try {
+            client.getWithRetries(GetRequest.builder().target("http://localhost:8080/my/slow").build(), null);
+            fail("Expected a DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 3000);
+        }
+    }
+
+    @Test
+    public void get_withConcurrencyLimitReached_rejectsAttemptAndAdaptsLimit() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/limited").willReturn(aResponse().withStatus(200).withFixedDelay(1000)));
+        stubFor(get("/my/overloaded").willReturn(aResponse().withStatus(503)));
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(1, 0, null, null));
+        client.enableConcurrencyLimits(ConcurrencyLimitConfig.builder().initialLimit(1).build());
+        AdaptiveConcurrencyLimiter limiter = client.getConcurrencyLimiter("localhost").get();
+        GetRequest request = GetRequest.builder().target("http://localhost:8080/my/limited").build();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> first = executor.submit(() -> client.getWithRetries(request, null));
+            while (limiter.getInFlight() == 0) {
+                Thread.sleep(10);
+            }
+            try {
+                client.getWithRetries(request, null);
+                fail("Expected a ConcurrencyLimitExceededException");
+            } catch (ConcurrencyLimitExceededException e) {
+                assertEquals(1, limiter.getRejected());
+            }
+            assertEquals(200, first.get().getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+        // A success while the limit was in use raises it, an overloaded response lowers it
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+        client.getWithRetries(GetRequest.builder().target("http://localhost:8080/my/overloaded").build(), null);
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void get_withConcurrencyLimitReachedAndRetryEverythingConfig_doesNotRetryRejection() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/limited-retried").willReturn(aResponse().withStatus(200).withFixedDelay(1000)));
+
+        RetryConfig retryEverything = RetryConfig.<Response>custom()
+                .maxAttempts(3)
+                .waitDuration(Duration.ofMillis(500))
+                .retryOnException(e -> true)
+                .build();
+        HttpApiClient client = new HttpApiClient(retryEverything);
+        client.enableConcurrencyLimits(ConcurrencyLimitConfig.builder().initialLimit(1).build());
+        AdaptiveConcurrencyLimiter limiter = client.getConcurrencyLimiter("localhost").get();
+        GetRequest request = GetRequest.builder().target("http://localhost:8080/my/limited-retried").build();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> first = executor.submit(() -> client.getWithRetries(request, null));
+            while (limiter.getInFlight() == 0) {
+                Thread.sleep(10);
+            }
+            long start = System.nanoTime();
+            try {
+                client.getWithRetries(request, null);
+                fail("Expected a ConcurrencyLimitExceededException");
+            } catch (ConcurrencyLimitExceededException e) {
+                // Rejected once, without waiting to retry
+                assertEquals(1, limiter.getRejected());
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+            }
+            try {
+                client.getWithRetriesAsync(request, null).toCompletableFuture().get(5, TimeUnit.SECONDS);
+                fail("Expected a ConcurrencyLimitExceededException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ConcurrencyLimitExceededException);
+                assertEquals(2, limiter.getRejected());
+            }
+            assertEquals(200, first.get().getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getPages_withLinkHeaders_publishesEveryPageOnDemand() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/pages/1?limit=2")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Link", "</my/pages/2?limit=2&page=2>; rel=\"next\"")
+                        .withBody("[{\"id\": 1}, {\"id\": 2}]"))
+        );
+        stubFor(get("/my/pages/2?limit=2&page=2")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[{\"id\": 3}]"))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        Flow.Publisher<String> pages = client.getPagesWithRetries(String.class,
+                GetRequest.builder()
+                        .target("http://localhost:8080/my/pages/1")
+                        .queryParams(Collections.singletonMap("limit", "2"))
+                        .build(),
+                null, NextPageResolver.linkHeader(), 1);
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        pages.subscribe(new Flow.Subscriber<String>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(String page) {
+                received.add(page);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+
+        done.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("[{\"id\": 1}, {\"id\": 2}]", "[{\"id\": 3}]"), received);
+        // The next link is followed as is, without the query parameters of the first request added again
+        verify(1, getRequestedFor(urlEqualTo("/my/pages/1?limit=2")));
+        verify(1, getRequestedFor(urlEqualTo("/my/pages/2?limit=2&page=2")));
+    }
+
+    @Test
+    public void send_withRetriedPost_replaysBodyWithSameIdempotencyKey() {
+        configureFor("localhost", 8080);
+        stubFor(post("/my/orders")
+                .inScenario("Orders")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("Step1")
+        );
+        stubFor(post("/my/orders")
+                .inScenario("Orders")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse().withStatus(200))
+        );
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+        ByteBuffer body = ByteBuffer.allocateDirect(16);
+        body.put("{\"id\": 1}".getBytes()).flip();
+        Response response = client.sendWithRetries(
+                WriteRequest.post("http://localhost:8080/my/orders", RequestBody.of(body, "application/json")).build(),
+                null);
+
+        assertEquals(200, response.getStatus());
+        List<LoggedRequest> requests = findAll(postRequestedFor(urlEqualTo("/my/orders")));
+        assertEquals(2, requests.size());
+        for (LoggedRequest request : requests) {
+            assertEquals("{\"id\": 1}", request.getBodyAsString());
+        }
+        String idempotencyKey = requests.get(0).getHeader("Idempotency-Key");
+        assertTrue(idempotencyKey != null && !idempotencyKey.isEmpty());
+        assertEquals(idempotencyKey, requests.get(1).getHeader("Idempotency-Key"));
+    }
+
+    @Test
+    public void send_withRetriedPutOfFile_streamsFileOnEveryAttempt() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(put("/my/documents/1")
+                .inScenario("Documents")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("Step1")
+        );
+        stubFor(put("/my/documents/1")
+                .inScenario("Documents")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse().withStatus(204))
+        );
+
+        Path file = Files.createTempFile("http-api-client", ".txt");
+        try {
+            Files.write(file, "Some content".getBytes());
+            HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+            Response response = client.sendWithRetries(
+                    WriteRequest.put("http://localhost:8080/my/documents/1", RequestBody.of(file, "text/plain"))
+                            .build(),
+                    null);
+
+            assertEquals(204, response.getStatus());
+            verify(2, putRequestedFor(urlEqualTo("/my/documents/1")).withRequestBody(equalTo("Some content")));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void send_withPatch_sendsPatchOrOverriddenPostDependingOnClient() {
+        configureFor("localhost", 8080);
+        stubFor(post("/my/profiles/1")
+                .withHeader("X-HTTP-Method-Override", equalTo("PATCH"))
+                .willReturn(aResponse().withStatus(200).withBody("overridden")));
+        stubFor(patch(urlEqualTo("/my/profiles/1")).willReturn(aResponse().withStatus(200).withBody("patched")));
+        WriteRequest request = WriteRequest.patch("http://localhost:8080/my/profiles/1",
+                RequestBody.json(Collections.singletonMap("name", "x"))).build();
+
+        // HttpURLConnection can't send PATCH, whatever the JDK
+        HttpApiClient defaultClient = new HttpApiClient();
+        assertEquals("overridden", defaultClient.sendWithRetries(String.class, request, null));
+        verify(postRequestedFor(urlEqualTo("/my/profiles/1"))
+                .withHeader("X-HTTP-Method-Override", equalTo("PATCH"))
+                .withHeader("Idempotency-Key", matching(".+"))
+                .withRequestBody(equalTo("{\"name\":\"x\"}")));
+
+        Client pooledClient = ClientHelper.pooledClient(PooledTransportConfig.builder().build());
+        try {
+            assertEquals("patched", new HttpApiClient(pooledClient).sendWithRetries(String.class, request, null));
+            verify(patchRequestedFor(urlEqualTo("/my/profiles/1"))
+                    .withoutHeader("X-HTTP-Method-Override")
+                    .withRequestBody(equalTo("{\"name\":\"x\"}")));
+        } finally {
+            pooledClient.close();
+        }
+    }
+
+    @Test
+    public void send_withPostWithoutIdempotencyKey_doesNotRetry() {
+        configureFor("localhost", 8080);
+        stubFor(post("/my/payments").willReturn(aResponse().withStatus(503)));
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+        Response response = client.sendWithRetries(
+                WriteRequest.post("http://localhost:8080/my/payments",
+                        RequestBody.json(Collections.singletonMap("amount", 1)))
+                        .generateIdempotencyKey(false)
+                        .build(),
+                null);
+
+        assertEquals(503, response.getStatus());
+        verify(1, postRequestedFor(urlEqualTo("/my/payments")).withRequestBody(equalTo("{\"amount\":1}")));
+    }
+
+    @Test
+    public void get_withCompressionEnabled_decompressesTypedAndStreamedEntities() throws IOException {
+        configureFor("localhost", 8080);
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            body.append(i == 0 ? "" : ", ").append("{\"id\": ").append(i).append(", \"name\": \"item\"}");
+        }
+        body.append("]");
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        // Served gzipped as is, so the entities can only be read if the client decodes them
+        stubFor(get("/my/compressible")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Encoding", "gzip")
+                        .withBody(gzipped.toByteArray()))
+        );
+
+        HttpApiClient client = new HttpApiClient();
+        client.enableCompression();
+        GetRequest request = GetRequest.builder().target("http://localhost:8080/my/compressible").build();
+
+        Response response = client.getWithRetries(request, null);
+        assertEquals("gzip", response.getHeaderString("Content-Encoding"));
+        assertEquals(body.toString(), response.readEntity(String.class));
+        try (Stream<Item> items = client.getWithRetriesAsStream(Item.class, request, null)) {
+            assertEquals(1000, items.count());
+        }
+        verify(2, getRequestedFor(urlEqualTo("/my/compressible"))
+                .withHeader("Accept-Encoding", containing("gzip")));
+    }
+
+    @Test
+    public void getWithRetries_toServiceWithFailingEndpoint_retriesOnOtherEndpointAndEjectsFailingOne() {
+        configureFor("localhost", 8080);
+        stubFor(get("/replica1/my/svc").willReturn(aResponse().withStatus(503)));
+        stubFor(get("/replica2/my/svc").willReturn(aResponse().withStatus(200).withBody("ok")));
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+        client.addService("orders",
+                Arrays.asList("http://localhost:8080/replica1", "http://localhost:8080/replica2/"),
+                LoadBalancerConfig.builder().build());
+        GetRequest request = GetRequest.builder().target("service://orders/my/svc").build();
+
+        for (int i = 0; i < 30; i++) {
+            Response response = client.getWithRetries(request, null);
+            assertEquals(200, response.getStatus());
+            response.close();
+        }
+        LoadBalancer.Endpoint replica1 = client.getLoadBalancer("orders").get().getEndpoints().get(0);
+        assertTrue(replica1.isEjected());
+        verify(30, getRequestedFor(urlEqualTo("/replica2/my/svc")));
+    }
+
+    @Test
+    public void warmUp_withPooledClientAndDnsCache_opensConnectionsToTargets() {
+        configureFor("localhost", 8080);
+        stubFor(head(urlEqualTo("/my/warm")).willReturn(aResponse().withStatus(200)));
+
+        Client pooledClient = ClientHelper.pooledClient(PooledTransportConfig.builder()
+                .maxConnectionsPerHost(3)
+                .dnsCache(DnsCacheConfig.builder().build())
+                .build());
+        try {
+            HttpApiClient client = new HttpApiClient(pooledClient);
+            assertTrue(client.warmUp(Collections.singletonList("http://localhost:8080/my/warm"), 3,
+                    Duration.ofSeconds(10)));
+            assertFalse(client.warmUp(Collections.singletonList("http://localhost:1/my/warm"), 1,
+                    Duration.ofSeconds(10)));
+        } finally {
+            pooledClient.close();
+        }
+        verify(3, headRequestedFor(urlEqualTo("/my/warm")));
+    }
+
+    @Test
+    public void dnsCache_resolve_looksUpEachHostOnceUntilRefreshed() throws UnknownHostException {
+        AtomicInteger lookups = new AtomicInteger();
+        DnsCache dnsCache = new DnsCache(DnsCacheConfig.builder().build(), host -> {
+            lookups.incrementAndGet();
+            if (host.endsWith(".invalid")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(InetAddress.getLoopbackAddress(), dnsCache.resolve("api.example.com")[0]);
+        }
+        assertEquals(1, lookups.get());
+        for (int i = 0; i < 2; i++) {
+            try {
+                dnsCache.resolve("unknown-host.invalid");
+                fail("Expected UnknownHostException");
+            } catch (UnknownHostException e) {
+                assertEquals("unknown-host.invalid", e.getMessage());
+            }
+        }
+        // Failed lookups aren't cached
+        assertEquals(3, lookups.get());
+        assertEquals(1, dnsCache.size());
+    }
+
+    @Test
+    public void getWithRetries_withHttp2Client_retriesAndClassifiesStatusesLikeOtherClients() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/multiplexed")
+                .inScenario("Multiplexed")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("Step1")
+        );
+        stubFor(get("/my/multiplexed")
+                .inScenario("Multiplexed")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody("Some content"))
+        );
+        stubFor(get("/my/missing").willReturn(aResponse().withStatus(404)));
+        stubFor(post("/my/multiplexed").willReturn(aResponse().withStatus(201).withBody("created")));
+
+        Client http2Client = ClientHelper.http2Client(Http2TransportConfig.builder().build());
+        try {
+            HttpApiClient client = new HttpApiClient(http2Client,
+                    RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+            GetRequest request = GetRequest.builder().target("http://localhost:8080/my/multiplexed").build();
+            assertEquals("Some content", client.getWithRetries(String.class, request, null));
+            verify(2, getRequestedFor(urlEqualTo("/my/multiplexed")));
+            assertEquals("Some content", client.getWithRetriesAsync(String.class, request, null)
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS));
+
+            try {
+                client.getWithRetries(String.class,
+                        GetRequest.builder().target("http://localhost:8080/my/missing").build(), null);
+                fail("Expected a ResponseNotOkException");
+            } catch (ResponseNotOkException e) {
+                assertEquals(404, e.getResponse().getStatus());
+            }
+
+            Response created = client.sendWithRetries(
+                    WriteRequest.post("http://localhost:8080/my/multiplexed", RequestBody.of("payload", "text/plain"))
+                            .build(),
+                    null);
+            assertEquals(201, created.getStatus());
+            assertEquals("created", created.readEntity(String.class));
+            verify(postRequestedFor(urlEqualTo("/my/multiplexed")).withRequestBody(equalTo("payload")));
+        } finally {
+            http2Client.close();
+        }
+    }
+
+    @Test
+    public void send_withHttp2TransportAndLargeBody_streamsBodyWhileItsWritten() throws Exception {
+        // WireMock only sees a request once its whole body is received
+        AtomicLong received = new AtomicLong();
+        CountDownLatch receiving = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/my/uploads", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                for (int read; (read = body.read(buffer)) != -1; ) {
+                    received.addAndGet(read);
+                    receiving.countDown();
+                }
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        String target = "http://localhost:" + server.getAddress().getPort() + "/my/uploads";
+
+        Client http2Client = ClientHelper.http2Client(Http2TransportConfig.builder().build());
+        Path file = Files.createTempFile("http-api-client", ".bin");
+        try {
+            // Only writes the rest of the body once the server got the start of it, which a buffered body never does
+            StreamingOutput body = output -> {
+                output.write(new byte[64 * 1024]);
+                output.flush();
+                try {
+                    if (!receiving.await(10, TimeUnit.SECONDS)) {
+                        throw new IOException("The server got nothing of the body written so far");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                output.write(new byte[64 * 1024]);
+            };
+            Response streamed = http2Client.target(target).request()
+                    .put(Entity.entity(body, "application/octet-stream"));
+            assertEquals(204, streamed.getStatus());
+            streamed.close();
+            assertEquals(128 * 1024, received.get());
+
+            byte[] content = new byte[8 * 1024 * 1024];
+            new Random(42).nextBytes(content);
+            Files.write(file, content);
+            received.set(0);
+            HttpApiClient client = new HttpApiClient(http2Client,
+                    RetryConfigHelper.regularIntervalConfig(3, 0, null, null));
+            Response response = client.sendWithRetries(
+                    WriteRequest.put(target, RequestBody.of(file, "application/octet-stream")).build(), null);
+            assertEquals(204, response.getStatus());
+            response.close();
+            assertEquals(content.length, received.get());
+        } finally {
+            Files.deleteIfExists(file);
+            http2Client.close();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void getWithRetries_withBoundTemplate_sendsEncodedPathHeadersAndQueryParams() {
+        configureFor("localhost", 8080);
+        stubFor(get(urlPathEqualTo("/my/users/a%20b/orders"))
+                .willReturn(aResponse().withStatus(200).withBody("orders")));
+        stubFor(get(urlPathEqualTo("/my/users/x/orders")).willReturn(aResponse().withStatus(200)));
+        stubFor(get(urlPathEqualTo("/my/plain")).willReturn(aResponse().withStatus(200)));
+
+        RequestTemplate template = RequestTemplate.builder()
+                .uriTemplate("http://localhost:8080/my/users/{id}/orders")
+                .acceptedResponse("text/plain")
+                .headers(Collections.singletonMap("X-Api-Key", "secret"))
+                .queryParams(Collections.singletonMap("fields", "total"))
+                .build();
+        assertEquals(Collections.singletonList("id"), template.getVariables());
+
+        HttpApiClient client = new HttpApiClient();
+        for (int i = 0; i < 2; i++) {
+            GetRequest request = template.bindWithQueryParams(Collections.singletonMap("page", String.valueOf(i)),
+                    "a b");
+            assertEquals("http://localhost:8080/my/users/a%20b/orders", request.getTarget());
+            assertEquals("orders", client.getWithRetries(String.class, request, null));
+            verify(getRequestedFor(urlPathEqualTo("/my/users/a%20b/orders"))
+                    .withHeader("X-Api-Key", equalTo("secret"))
+                    .withQueryParam("fields", equalTo("total"))
+                    .withQueryParam("page", equalTo(String.valueOf(i))));
+            try {
+                request.getQueryParams().put("page", "changed");
+                fail("Expected an UnsupportedOperationException");
+            } catch (UnsupportedOperationException e) {
+                // Requests bound without query parameters of their own share the template's
+            }
+        }
+
+        // The host of a request whose target was changed after binding is the new target's
+        client.getWithRetries(template.bind("x").toBuilder()
+                .target("http://127.0.0.1:8080/my/users/x/orders")
+                .build(), null).close();
+        List<String> hosts = client.getMetrics().snapshot().stream()
+                .map(CallMetricsSnapshot::getHost)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("127.0.0.1", "localhost"), hosts);
+
+        // Query parameters of requests that aren't bound from a template are sent too
+        client.getWithRetries(GetRequest.builder()
+                .target("http://localhost:8080/my/plain")
+                .queryParams(Collections.singletonMap("q", "x y"))
+                .build(), null).close();
+        verify(getRequestedFor(urlPathEqualTo("/my/plain")).withQueryParam("q", equalTo("x y")));
+
+        try {
+            RequestTemplate.builder().uriTemplate("http://{host}/my/users").build();
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("only allowed in the path"));
+        }
+    }
+
+    @Test
+    public void getWithRetries_whileRecording_emitsAttemptAndBackoffWaitEvents() throws Exception {
+        configureFor("localhost", 8080);
+        stubFor(get("/my/recorded")
+                .inScenario("Recorded")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("Step1")
+        );
+        stubFor(get("/my/recorded")
+                .inScenario("Recorded")
+                .whenScenarioStateIs("Step1")
+                .willReturn(aResponse().withStatus(200))
+        );
+
+        HttpApiClient client = new HttpApiClient(RetryConfigHelper.regularIntervalConfig(2, 1, null, null));
+        Path dump = Files.createTempFile("http-api-client", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.example.rs.http.retryingclient.Attempt");
+            recording.enable("org.example.rs.http.retryingclient.BackoffWait");
+            recording.start();
+            client.getWithRetries(GetRequest.builder().target("http://localhost:8080/my/recorded").build(), null)
+                    .close();
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            List<RecordedEvent> attempts = events.stream()
+                    .filter(e -> e.getEventType().getName().endsWith(".Attempt"))
+                    .sorted(Comparator.comparingInt(e -> e.getInt("attempt")))
+                    .collect(Collectors.toList());
+            assertEquals(2, attempts.size());
+            assertEquals(503, attempts.get(0).getInt("statusCode"));
+            assertEquals(200, attempts.get(1).getInt("statusCode"));
+            assertEquals("defaultRetry", attempts.get(0).getString("retryName"));
+            assertEquals("localhost", attempts.get(0).getString("host"));
+
+            List<RecordedEvent> waits = events.stream()
+                    .filter(e -> e.getEventType().getName().endsWith(".BackoffWait"))
+                    .collect(Collectors.toList());
+            assertEquals(1, waits.size());
+            assertEquals(1, waits.get(0).getInt("attempt"));
+            assertTrue(waits.get(0).getDuration().toMillis() >= 900);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    private static boolean isClosed(Response response) {
+        try {
+            response.hasEntity();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
 }
 
 class Dummy {
 }
+
+class Item {
+    public int id;
+    public String name;
+}